@@ -0,0 +1,93 @@
+package autolayout.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import javax.imageio.ImageIO;
+
+import autolayout.*;
+import processing.core.*;
+
+// Входные данные бенчмарков: силуэты из data/ (или синтетические) и раскладки с заданным числом бабблов
+final class BenchmarkLayouts {
+	// каталог с изображениями, по умолчанию data/ в корне репозитория
+	static final String DATA_DIR = System.getProperty("autolayout.data", "data");
+
+	static final String SYNTHETIC_PREFIX = "synthetic-";
+
+	private BenchmarkLayouts() {
+	}
+
+	// Растр силуэта в формате PImage.pixels. Имя вида synthetic-N задаёт синтетический силуэт NxN
+	static int[] loadPixels(String silhouette, int[] size) throws IOException {
+		if(silhouette.startsWith(SYNTHETIC_PREFIX)) {
+			int n = Integer.parseInt(silhouette.substring(SYNTHETIC_PREFIX.length()));
+
+			size[0] = n;
+			size[1] = n;
+
+			return syntheticPixels(n);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+
+		BufferedImage img = ImageIO.read(new File(DATA_DIR, silhouette));
+
+		if(img == null)
+			throw new IOException("Can't decode " + silhouette);
+
+		size[0] = img.getWidth();
+		size[1] = img.getHeight();
+
+		return img.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+	}
+
+	// сплошной эллипс с размытым краем и прорезями, чтобы были и сплошные области, и перепады веса
+	static int[] syntheticPixels(int n) {
+		int[] pixels = new int[n*n];
+
+		for(int j = 0; j < n; j++)
+			for(int i = 0; i < n; i++) {
+				float dx = (i + 0.5f)/n - 0.5f;
+				float dy = (j + 0.5f)/n - 0.5f;
+
+				float r = (float)Math.sqrt(dx*dx*1.5f + dy*dy)*2.0f;
+
+				float weight = Math.max(0.0f, Math.min(1.0f, (1.0f - r)*4.0f));
+
+				if(((i*8/n) + (j*8/n)) % 5 == 0) // прорези
+					weight *= 0.3f;
+
+				int grey = (int)(weight*255.0f);
+
+				pixels[j*n + i] = 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+			}
+
+		return pixels;
+	}
+
+	// Раскладка без PApplet: силуэт, элемент UI как в AutoLayout и заданное число бабблов с одним пином.
+	// Размеры бабблов уменьшаются с ростом их числа, чтобы плотность оставалась похожей на реальную
+	static LayoutManager createLayout(int[] pixels, int width, int height, int numBubbles, long seed) {
+		LayoutManager layout = new LayoutManager();
+
+		layout.init(pixels, width, height);
+
+		layout.addUIElement(new Rect(layout.viewport.min.x, layout.viewport.max.y - 200, layout.viewport.min.x + 300, layout.viewport.max.y));
+
+		Random random = new Random(seed);
+
+		float dimScale = (float)Math.min(1.0, Math.sqrt(20.0/numBubbles));
+
+		for(int i = 0; i < numBubbles; i++) {
+			PVector dim = new PVector((150 + random.nextFloat()*100)*dimScale, (20 + random.nextFloat()*100)*dimScale);
+			PVector pin = new PVector(100 + random.nextFloat()*800, 100 + random.nextFloat()*800);
+
+			layout.addBubble(dim, pin);
+		}
+
+		return layout;
+	}
+}
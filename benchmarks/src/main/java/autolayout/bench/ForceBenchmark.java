@@ -0,0 +1,132 @@
+package autolayout.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import autolayout.*;
+
+// Стоимость одного прохода каждой силы по всем бабблам, в середине расчёта (все силы уже подключены)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForceBenchmark {
+	// итерация, после которой подключены все силы
+	static final int START_ITERATION = 25;
+
+	@Param({"headphones.png", "test1.png", "test2.png", "synthetic-64", "synthetic-256", "synthetic-1024"})
+	public String silhouette;
+
+	@Param({"5", "50", "500", "5000"})
+	public int bubbles;
+
+	private LayoutManager layout;
+	private List<LayoutManager.Bubble> bubbleList;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		int[] size = new int[2];
+		int[] pixels = BenchmarkLayouts.loadPixels(this.silhouette, size);
+
+		this.layout = BenchmarkLayouts.createLayout(pixels, size[0], size[1], this.bubbles, 1);
+
+		// бабблы в положении середины расчёта
+		while(this.layout.numIterations < START_ITERATION && !this.layout.calculationDone)
+			this.layout.process();
+
+		this.layout.numIterations = START_ITERATION;
+
+		this.bubbleList = this.layout.getBubbles();
+
+		this.layout.prepareIteration();
+	}
+
+	@Benchmark
+	public void silhouetteForce(Blackhole bh) {
+		this.layout.silhouetteForceMode = LayoutManager.SilhouetteForceMode.POINTS;
+		this.layout.useVectorKernel = false;
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcSilhouetteForce(bubble));
+	}
+
+	// векторный обход точек; без модуля jdk.incubator.vector совпадает с silhouetteForce
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+	public void silhouetteForceVector(Blackhole bh) {
+		this.layout.silhouetteForceMode = LayoutManager.SilhouetteForceMode.POINTS;
+		this.layout.useVectorKernel = true;
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcSilhouetteForce(bubble));
+	}
+
+	@Benchmark
+	public void silhouetteForceIntegral(Blackhole bh) {
+		this.layout.silhouetteForceMode = LayoutManager.SilhouetteForceMode.INTEGRAL;
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcSilhouetteForce(bubble));
+	}
+
+	@Benchmark
+	public void silhouetteForceRegions(Blackhole bh) {
+		this.layout.silhouetteForceMode = LayoutManager.SilhouetteForceMode.REGIONS;
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcSilhouetteForce(bubble));
+	}
+
+	@Benchmark
+	public void uiIntersectionForce(Blackhole bh) {
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcUIIntersectionForce(bubble));
+	}
+
+	@Benchmark
+	public void bubbleLongRangeForce(Blackhole bh) {
+		this.layout.longRangeMode = LayoutManager.LongRangeMode.EXACT;
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcBubbleLongRangeForce(bubble));
+	}
+
+	// включая построение дерева, которое выполняется раз в итерацию
+	@Benchmark
+	public void bubbleLongRangeForceBarnesHut(Blackhole bh) {
+		this.layout.longRangeMode = LayoutManager.LongRangeMode.BARNES_HUT;
+
+		this.layout.prepareIteration();
+
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcBubbleLongRangeForce(bubble));
+	}
+
+	@Benchmark
+	public void bubbleIntersectionForce(Blackhole bh) {
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcBubbleIntersectionForce(bubble));
+	}
+
+	@Benchmark
+	public void bubbleIntersectionForcesSweepAndPrune() {
+		this.layout.calcBubbleIntersectionForces();
+	}
+
+	@Benchmark
+	public void pinsForce(Blackhole bh) {
+		for(LayoutManager.Bubble bubble : this.bubbleList)
+			bh.consume(this.layout.calcPinsForce(bubble));
+	}
+
+	// пересечения линий к пинам заметающей прямой (оценка качества и распутывание)
+	@Benchmark
+	public int leaderCrossings() {
+		return this.layout.countLeaderCrossings();
+	}
+}
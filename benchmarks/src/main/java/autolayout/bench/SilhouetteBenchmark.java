@@ -0,0 +1,75 @@
+package autolayout.bench;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import autolayout.*;
+
+// Подготовка силуэта: построение индекса и таблиц сумм в init(), загрузка из кеша, расчёт областей притяжения
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SilhouetteBenchmark {
+	@Param({"headphones.png", "test1.png", "test2.png", "synthetic-64", "synthetic-256", "synthetic-1024"})
+	public String silhouette;
+
+	private int[] pixels;
+	private int[] size = new int[2];
+
+	private LayoutManager layout;
+	private LayoutManager cachedLayout;
+
+	private Path cacheDir;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.pixels = BenchmarkLayouts.loadPixels(this.silhouette, this.size);
+
+		this.layout = new LayoutManager();
+		this.layout.init(this.pixels, this.size[0], this.size[1]);
+
+		// файл кеша создаётся здесь, в замерах силуэт только читается с диска
+		this.cacheDir = Files.createTempDirectory("silhouette-cache");
+
+		this.cachedLayout = new LayoutManager();
+		this.cachedLayout.silhouetteCache = new SilhouetteCache(this.cacheDir);
+		this.cachedLayout.init(this.pixels, this.size[0], this.size[1]);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		for(File file : this.cacheDir.toFile().listFiles())
+			file.delete();
+
+		Files.delete(this.cacheDir);
+	}
+
+	@Benchmark
+	public LayoutManager init() {
+		this.layout.init(this.pixels, this.size[0], this.size[1]);
+
+		return this.layout;
+	}
+
+	// загрузка с диска: хеш растра и отображение файла, без предобработки
+	@Benchmark
+	public LayoutManager initCached() {
+		this.cachedLayout.silhouetteCache.clear();
+		this.cachedLayout.init(this.pixels, this.size[0], this.size[1]);
+
+		return this.cachedLayout;
+	}
+
+	@Benchmark
+	public LayoutManager calculateAttractionAreas() {
+		this.layout.calculateAttractionAreas();
+
+		return this.layout;
+	}
+}
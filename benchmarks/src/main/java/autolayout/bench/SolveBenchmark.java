@@ -0,0 +1,58 @@
+package autolayout.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import autolayout.*;
+
+// Полный расчёт раскладки от начального положения до остановки
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SolveBenchmark {
+	@Param({"headphones.png", "test1.png", "test2.png", "synthetic-64", "synthetic-256", "synthetic-1024"})
+	public String silhouette;
+
+	@Param({"5", "50", "500", "5000"})
+	public int bubbles;
+
+	private int[] pixels;
+	private int[] size = new int[2];
+
+	private LayoutManager layout;
+
+	@Setup(Level.Trial)
+	public void loadSilhouette() throws Exception {
+		this.pixels = BenchmarkLayouts.loadPixels(this.silhouette, this.size);
+	}
+
+	@Setup(Level.Invocation)
+	public void createLayout() {
+		this.layout = BenchmarkLayouts.createLayout(this.pixels, this.size[0], this.size[1], this.bubbles, 1);
+	}
+
+	@Benchmark
+	public List<Rect> solve() {
+		return this.layout.solve();
+	}
+
+	// накладные расходы сбора метрик
+	@Benchmark
+	public List<Rect> solveWithMetrics() {
+		this.layout.metrics = new SolveMetrics();
+
+		return this.layout.solve();
+	}
+
+	@Benchmark
+	public List<Rect> solveSilhouettePyramid() {
+		this.layout.useSilhouettePyramid = true;
+
+		return this.layout.solve();
+	}
+}
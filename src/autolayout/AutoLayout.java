@@ -0,0 +1,152 @@
+package autolayout;
+
+import processing.core.*;
+
+import g4p_controls.*;
+
+public class AutoLayout extends PApplet {
+	private int lastWidth = 0;
+	private int lastHeight = 0;
+
+	private LayoutManager layoutManager = new LayoutManager(this);
+
+	// показывать лучшую из нескольких раскладок, посчитанных параллельно, вместо анимации одного расчёта
+	private boolean useMultiStart = false;
+	private MultiStartSolver multiStartSolver = new MultiStartSolver(Runtime.getRuntime().availableProcessors());
+
+	// расчёт идёт в своём потоке, draw() только рисует последний опубликованный снимок
+	private BackgroundSolver solver;
+	private boolean failureReported = false;
+
+	public void setup() {
+		layoutManager.init("data/headphones.png");
+		//layoutManager.init("data/test2.png");
+
+		// после завершения расчёта раскладка показывается 3 секунды, затем расчёт начинается заново
+		solver = new BackgroundSolver(layoutManager);
+		solver.restartDelay = 3000;
+		solver.onDone = this::resetBubbles;
+
+		solver.submit(this::resetBubbles);
+		solver.start();
+
+		G4P.setGlobalColorScheme(GConstants.CYAN_SCHEME);
+
+		surface.setTitle("AutoLayout");
+		surface.setResizable(true);
+		surface.setLocation(100, 100);
+
+		smooth();
+
+		frameRate(60);
+
+		/*
+
+		int processStart = millis();
+
+		while(!layoutManager.calculationDone)
+			layoutManager.process();
+
+		PApplet.println("Calc time = " + Integer.toString((millis() - processStart)));
+		*/
+	}
+
+	@Override
+	public void settings() {
+		super.settings();
+
+		size(700, 700);
+	}
+
+	void checkResizing() {
+		if (this.lastWidth == width && this.lastHeight == height)
+			return;
+
+		this.lastWidth = width;
+		this.lastHeight = height;
+
+		this.layoutManager.posX = 20;
+		this.layoutManager.posY = 20;
+		this.layoutManager.areaWidth = height - 40;
+		this.layoutManager.areaHeight = height - 40;
+	}
+
+	public void draw() {
+		LayoutManager layout = solver.getLayout();
+
+		// поток расчёта мог заменить раскладку (многократный запуск), параметры отрисовки задаются заново
+		if(layout != layoutManager) {
+			layoutManager = layout;
+			lastWidth = 0;
+		}
+
+		checkResizing();
+
+		background(0x4B4B4B);
+
+		layoutManager.draw();
+
+		// поток расчёта остановился на исключении: раскладка больше не меняется, показываем причину
+		Throwable failure = solver.getFailure();
+
+		if(failure != null) {
+			if(!failureReported) {
+				System.err.println("Layout calculation stopped:");
+				failure.printStackTrace();
+
+				failureReported = true;
+			}
+
+			fill(0xFFFF5050);
+			textAlign(LEFT, BOTTOM);
+			text("Layout calculation stopped: " + failure, 10, height - 10);
+		}
+	}
+
+	// щелчок добавляет баббл с пином под курсором, раскладка пересчитывается только вокруг него
+	public void mousePressed() {
+		PVector pinPos = layoutManager.screenToViewport(mouseX, mouseY);
+
+		PVector dim = new PVector(random(150, 250), random(20, 120));
+
+		solver.submit(layout -> {
+			layout.addBubbleAndRelayout(dim, pinPos);
+
+			return layout;
+		});
+	}
+
+	// выполняется в потоке расчёта
+	LayoutManager resetBubbles(LayoutManager layout) {
+		layout.resetBubbles();
+
+		if(!useMultiStart)
+			return layout;
+
+		try {
+			return multiStartSolver.solve(layout, millis()).layout;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			return layout;
+		}
+	}
+
+	@Override
+	public void dispose() {
+		try {
+			if(solver != null)
+				solver.stop();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		super.dispose();
+	}
+
+	public static void main(String[] args) {
+		String[] processingArgs = { "AutoLayout" };
+		AutoLayout mySketch = new AutoLayout();
+		PApplet.runSketch(processingArgs, mySketch);
+	}
+}
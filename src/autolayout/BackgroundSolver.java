@@ -0,0 +1,104 @@
+package autolayout;
+
+import java.util.concurrent.*;
+import java.util.function.UnaryOperator;
+
+// Расчёт раскладки в отдельном потоке. Поток выполняет process() без пауз, пока расчёт не завершён,
+// и после каждой итерации публикует снимок (LayoutManager.publishSnapshots), так что отрисовка
+// читает готовые снимки без блокировок и не ждёт расчёта.
+// Раскладку меняет только поток расчёта: изменения (добавление бабблов, новый расчёт) передаются
+// командами через submit() и выполняются между итерациями. Команда возвращает раскладку, с которой
+// расчёт продолжается - ту же или новую (например, лучшую из MultiStartSolver).
+public class BackgroundSolver {
+	// команда после завершения расчёта, если за restartDelay мс не пришло других команд. null - ждать команд
+	public UnaryOperator<LayoutManager> onDone = null;
+	public long 	restartDelay = 3000;
+
+	private volatile LayoutManager 	layout;
+	private volatile Throwable 		failure;
+
+	private final BlockingQueue<UnaryOperator<LayoutManager>> commands = new LinkedBlockingQueue<UnaryOperator<LayoutManager>>();
+
+	private Thread thread;
+
+	public BackgroundSolver(LayoutManager layout) {
+		this.layout = layout;
+	}
+
+	// раскладка, которую сейчас считает поток. Читать из неё можно только снимок и параметры отрисовки
+	public LayoutManager getLayout() {
+		return this.layout;
+	}
+
+	// исключение, на котором остановился поток расчёта, или null
+	public Throwable getFailure() {
+		return this.failure;
+	}
+
+	public void submit(UnaryOperator<LayoutManager> command) {
+		this.commands.add(command);
+	}
+
+	public synchronized void start() {
+		if(this.thread != null)
+			throw new IllegalStateException("Solver is already running");
+
+		// первый снимок публикуется до старта потока, чтобы отрисовке всегда было что рисовать
+		publish(this.layout);
+
+		this.thread = new Thread(this::run, "layout solver");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	// останавливает поток и ждёт его завершения. Итерация, которая уже идёт, досчитывается
+	public synchronized void stop() throws InterruptedException {
+		if(this.thread == null)
+			return;
+
+		this.thread.interrupt();
+		this.thread.join();
+		this.thread = null;
+	}
+
+	private void run() {
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				LayoutManager layout = this.layout;
+
+				UnaryOperator<LayoutManager> command;
+
+				if(!layout.calculationDone)
+					command = this.commands.poll();
+				else if(this.onDone == null)
+					command = this.commands.take();
+				else {
+					command = this.commands.poll(this.restartDelay, TimeUnit.MILLISECONDS);
+
+					if(command == null)
+						command = this.onDone;
+				}
+
+				if(command != null) {
+					LayoutManager next = command.apply(layout);
+
+					publish(next);
+
+					this.layout = next;
+				} else
+					layout.process(); // публикует снимок сама
+			}
+		} catch(InterruptedException e) {
+			// остановка через stop()
+		} catch(RuntimeException | Error e) {
+			this.failure = e;
+
+			throw e;
+		}
+	}
+
+	private static void publish(LayoutManager layout) {
+		layout.publishSnapshots = true;
+		layout.publishSnapshot();
+	}
+}
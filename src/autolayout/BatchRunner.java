@@ -0,0 +1,315 @@
+package autolayout;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.imageio.ImageIO;
+
+import processing.core.*;
+import processing.data.*;
+
+/*
+Пакетный расчёт раскладок без окна. Задания читаются построчно в формате JSON lines, по объекту на строку:
+
+	{"id": "sku-1", "silhouette": "images/sku-1.png",
+	 "bubbles": [{"size": [200, 60], "pins": [[420, 310]]}, {"size": [150, 40], "pins": [[600, 650], [640, 700]]}],
+	 "ui": [[0, 800, 300, 1000]], "viewport": [0, 0, 1000, 1000], "seed": 1}
+
+ui, viewport и seed необязательны. Пути к силуэтам - относительно текущего каталога.
+Результаты пишутся по мере готовности (не в порядке заданий), тоже по объекту на строку:
+
+	{"id": "sku-1", "line": 1, "status": "ok", "iterations": 97, "stopReason": "CONVERGED", "score": 31250.5,
+	 "crossings": 0, "millis": 41, "bubbles": [[minX, minY, maxX, maxY], ...]}
+
+или {"id": ..., "line": ..., "status": "error", "error": "..."}.
+
+Задания считаются в пуле из threads потоков. Чтение опережает расчёт не больше чем на 2*threads заданий,
+поэтому память не зависит от размера каталога. Декодированные силуэты общие для заданий с одним
+изображением, в памяти держится не больше maxSilhouettes последних использованных.
+
+	java autolayout.BatchRunner [--threads N] [--silhouettes N] [--cache DIR] [--cache-limit MB] [--untangle] [input.jsonl|-] [output.jsonl|-]
+
+С --cache-limit после пакета из кеша удаляются давно не использованные файлы сверх заданного объёма.
+*/
+public class BatchRunner {
+	public int 		threads = Runtime.getRuntime().availableProcessors();
+	public int 		maxSilhouettes = 64;
+	public boolean 	untangleLeaders = false;
+
+	// дисковый кеш предобработанных силуэтов (между запусками). null - силуэты строятся из изображений
+	public SilhouetteCache silhouetteCache = null;
+
+	// загруженные силуэты по пути и центру. Задача загрузки общая: одно изображение декодируется один раз,
+	// даже если его одновременно запросили несколько заданий
+	private final LinkedHashMap<String, FutureTask<Silhouette>> silhouettes =
+		new LinkedHashMap<String, FutureTask<Silhouette>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Silhouette>> eldest) {
+				return size() > BatchRunner.this.maxSilhouettes;
+			}
+		};
+
+	public static void main(String[] args) throws Exception {
+		BatchRunner runner = new BatchRunner();
+
+		String input = "-", output = "-";
+		int numFiles = 0;
+		long cacheLimit = -1;
+
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--threads":
+					runner.threads = Integer.parseInt(args[++i]);
+					break;
+				case "--silhouettes":
+					runner.maxSilhouettes = Integer.parseInt(args[++i]);
+					break;
+				case "--cache":
+					runner.silhouetteCache = new SilhouetteCache(Paths.get(args[++i]), 0); // в памяти силуэты держит runner
+					break;
+				case "--cache-limit":
+					cacheLimit = Long.parseLong(args[++i])*1024*1024;
+					break;
+				case "--untangle":
+					runner.untangleLeaders = true;
+					break;
+				default:
+					if(numFiles == 0)
+						input = args[i];
+					else if(numFiles == 1)
+						output = args[i];
+					else
+						throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+
+					numFiles++;
+			}
+		}
+
+		try(BufferedReader reader = input.equals("-")
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+			Writer writer = output.equals("-")
+				? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+			int numFailed = runner.run(reader, writer);
+
+			if(numFailed > 0)
+				System.err.println(numFailed + " job(s) failed");
+		}
+
+		if(runner.silhouetteCache != null && cacheLimit >= 0)
+			runner.silhouetteCache.trimFiles(cacheLimit);
+	}
+
+	// Считает все задания из reader, результаты пишет в writer по мере готовности. Возвращает число неудачных заданий
+	public int run(BufferedReader reader, Writer writer) throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+			Thread thread = new Thread(runnable, "batch solver");
+
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		Semaphore inFlight = new Semaphore(2*this.threads);
+
+		int[] numFailed = { 0 };
+		IOException[] writeError = { null };
+
+		try {
+			String line;
+			int lineNumber = 0;
+
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+
+				if(line.trim().isEmpty())
+					continue;
+
+				inFlight.acquire();
+
+				String job = line;
+				int jobLine = lineNumber;
+
+				executor.execute(() -> {
+					try {
+						JSONObject result = solve(job, jobLine);
+
+						synchronized(writer) {
+							if(result.getString("status").equals("error"))
+								numFailed[0]++;
+
+							try {
+								writer.write(result.format(-1));
+								writer.write('\n');
+								writer.flush();
+							} catch(IOException e) {
+								writeError[0] = e;
+							}
+						}
+					} finally {
+						inFlight.release();
+					}
+				});
+
+				synchronized(writer) {
+					if(writeError[0] != null)
+						throw writeError[0];
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+
+		synchronized(writer) {
+			if(writeError[0] != null)
+				throw writeError[0];
+
+			return numFailed[0];
+		}
+	}
+
+	// Расчёт одного задания. Ошибки задания (формат, файл) не прерывают пакет, а попадают в результат
+	JSONObject solve(String line, int lineNumber) {
+		JSONObject result = new JSONObject();
+
+		result.setInt("line", lineNumber);
+
+		long start = System.nanoTime();
+
+		try {
+			JSONObject job = JSONObject.parse(line);
+
+			if(job == null)
+				throw new IllegalArgumentException("Not a JSON object");
+
+			if(job.hasKey("id"))
+				result.setString("id", job.get("id").toString());
+
+			LayoutManager layout = new LayoutManager();
+
+			layout.untangleLeaders = this.untangleLeaders;
+			layout.random = new Random(job.getLong("seed", 0));
+
+			if(job.hasKey("viewport"))
+				layout.viewport = parseRect(job.getJSONArray("viewport"));
+
+			PVector center = layout.viewport.getCenter();
+
+			layout.init(getSilhouette(Paths.get(job.getString("silhouette")), center.x, center.y, layout));
+
+			if(job.hasKey("ui")) {
+				JSONArray ui = job.getJSONArray("ui");
+
+				for(int i = 0; i < ui.size(); i++)
+					layout.addUIElement(parseRect(ui.getJSONArray(i)));
+			}
+
+			JSONArray bubbles = job.getJSONArray("bubbles");
+
+			for(int i = 0; i < bubbles.size(); i++) {
+				JSONObject bubble = bubbles.getJSONObject(i);
+
+				JSONArray size = bubble.getJSONArray("size");
+				JSONArray pins = bubble.getJSONArray("pins");
+
+				PVector[] pinPositions = new PVector[pins.size()];
+
+				for(int pin = 0; pin < pins.size(); pin++)
+					pinPositions[pin] = new PVector(pins.getJSONArray(pin).getFloat(0), pins.getJSONArray(pin).getFloat(1));
+
+				layout.addBubble(new PVector(size.getFloat(0), size.getFloat(1)), pinPositions);
+			}
+
+			List<Rect> rects = layout.solve();
+
+			LayoutQuality quality = layout.getQuality(true);
+
+			JSONArray resultBubbles = new JSONArray();
+
+			for(Rect rect : rects)
+				resultBubbles.append(new JSONArray().append(rect.min.x).append(rect.min.y).append(rect.max.x).append(rect.max.y));
+
+			result.setString("status", "ok");
+			result.setInt("iterations", layout.numIterations);
+			result.setString("stopReason", layout.stopReason.toString());
+			result.setFloat("score", quality.getScore());
+			result.setInt("crossings", quality.leaderCrossings);
+			result.setJSONArray("bubbles", resultBubbles);
+		} catch(Exception e) { // RuntimeException из JSON и расчёта, IOException при чтении изображения
+			result.setString("status", "error");
+			result.setString("error", e.toString());
+		}
+
+		result.setLong("millis", (System.nanoTime() - start)/1000000);
+
+		return result;
+	}
+
+	private Silhouette getSilhouette(Path file, float centerX, float centerY, LayoutManager layout) throws IOException {
+		String key = file.toAbsolutePath().normalize() + "@" + centerX + "," + centerY;
+
+		FutureTask<Silhouette> task;
+		boolean isNew = false;
+
+		synchronized(this.silhouettes) {
+			task = this.silhouettes.get(key);
+
+			if(task == null) {
+				task = new FutureTask<Silhouette>(() -> loadSilhouette(file, centerX, centerY, layout));
+				isNew = true;
+
+				this.silhouettes.put(key, task);
+			}
+		}
+
+		if(isNew)
+			task.run();
+
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IOException("Interrupted while loading " + file, e);
+		} catch(ExecutionException e) {
+			// ошибка не запоминается: файл могут исправить, следующее задание попробует снова
+			synchronized(this.silhouettes) {
+				this.silhouettes.remove(key, task);
+			}
+
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+
+			throw new IllegalStateException("Can't load " + file, e.getCause());
+		}
+	}
+
+	// параметры предобработки берутся из LayoutManager, как в LayoutManager.init()
+	private Silhouette loadSilhouette(Path file, float centerX, float centerY, LayoutManager layout) throws IOException {
+		if(this.silhouetteCache != null)
+			return this.silhouetteCache.get(file, centerX, centerY,
+				layout.SIL_POINT_SIZE, layout.MIN_SIL_POINT_WEIGHT, layout.SIL_GRID_CELL_SIZE);
+
+		BufferedImage img = ImageIO.read(file.toFile());
+
+		if(img == null)
+			throw new IOException("Can't decode " + file);
+
+		int width = img.getWidth(), height = img.getHeight();
+
+		int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+
+		return Silhouette.fromPixels(pixels, width, height, centerX, centerY,
+			layout.SIL_POINT_SIZE, layout.MIN_SIL_POINT_WEIGHT, layout.SIL_GRID_CELL_SIZE);
+	}
+
+	private static Rect parseRect(JSONArray values) {
+		return new Rect(values.getFloat(0), values.getFloat(1), values.getFloat(2), values.getFloat(3));
+	}
+}
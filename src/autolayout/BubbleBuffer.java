@@ -0,0 +1,88 @@
+package autolayout;
+
+import processing.core.*;
+
+// Упакованное состояние бабблов и пинов (структура массивов).
+// Заполняется из объектов Bubble в начале каждой итерации, расчёт сил читает
+// положения других бабблов и пинов отсюда последовательным обходом массивов.
+public class BubbleBuffer {
+	public int 		count;
+	public float[] 	posX = new float[0], posY = new float[0]; // центр баббла
+	public float[] 	velX = new float[0], velY = new float[0];
+	public float[] 	dimX = new float[0], dimY = new float[0]; // размеры
+
+	// итоговая сила, посчитанная для всех бабблов сразу (параллельный режим)
+	public float[] 	forceX = new float[0], forceY = new float[0];
+
+	// сила пересечения с другими бабблами, посчитанная попарно для всех бабблов сразу
+	public float[] 	intersectionForceX = new float[0], intersectionForceY = new float[0];
+
+	// показатели качества (LayoutQuality) на текущей итерации, накапливаются в расчёте сил
+	public float[] 	silhouetteCoverage = new float[0]; // вес силуэта под прямоугольником баббла (без полей)
+	public float[] 	bubbleOverlap = new float[0]; // перекрытие с другими бабблами без полей, каждая пара учтена у обоих
+	public float[] 	uiOverlap = new float[0];
+	public float[] 	clippedArea = new float[0];
+	public float[] 	leaderLength = new float[0];
+
+	// пины баббла i: pinIndex[pinStart[i]] .. pinIndex[pinStart[i + 1] - 1], индексы в pinX/pinY
+	public int[] 	pinStart = new int[1];
+	public int[] 	pinIndex = new int[0];
+
+	public int 		numPins;
+	public float[] 	pinX = new float[0], pinY = new float[0];
+
+	public void resize(int numBubbles, int numPins, int numPinLinks) {
+		this.count = numBubbles;
+		this.numPins = numPins;
+
+		if(this.posX.length < numBubbles) {
+			this.posX = new float[numBubbles];
+			this.posY = new float[numBubbles];
+			this.velX = new float[numBubbles];
+			this.velY = new float[numBubbles];
+			this.dimX = new float[numBubbles];
+			this.dimY = new float[numBubbles];
+			this.forceX = new float[numBubbles];
+			this.forceY = new float[numBubbles];
+			this.intersectionForceX = new float[numBubbles];
+			this.intersectionForceY = new float[numBubbles];
+			this.silhouetteCoverage = new float[numBubbles];
+			this.bubbleOverlap = new float[numBubbles];
+			this.uiOverlap = new float[numBubbles];
+			this.clippedArea = new float[numBubbles];
+			this.leaderLength = new float[numBubbles];
+			this.pinStart = new int[numBubbles + 1];
+		}
+
+		if(this.pinX.length < numPins) {
+			this.pinX = new float[numPins];
+			this.pinY = new float[numPins];
+		}
+
+		if(this.pinIndex.length < numPinLinks)
+			this.pinIndex = new int[numPinLinks];
+	}
+
+	// обнуляет накопители итерации баббла i
+	public void clearAccumulators(int i) {
+		this.silhouetteCoverage[i] = 0.0f;
+		this.bubbleOverlap[i] = 0.0f;
+		this.uiOverlap[i] = 0.0f;
+		this.clippedArea[i] = 0.0f;
+		this.leaderLength[i] = 0.0f;
+	}
+
+	// обнуляет только перекрытия баббла i с другими бабблами
+	public void clearBubbleOverlap(int i) {
+		this.bubbleOverlap[i] = 0.0f;
+	}
+
+	public void set(int i, PVector pos, PVector vel, PVector dim) {
+		this.posX[i] = pos.x;
+		this.posY[i] = pos.y;
+		this.velX[i] = vel.x;
+		this.velY[i] = vel.y;
+		this.dimX[i] = dim.x;
+		this.dimY[i] = dim.y;
+	}
+}
@@ -0,0 +1,204 @@
+package autolayout;
+
+import java.util.*;
+
+import processing.core.*;
+
+// Квадродерево по центрам бабблов для приближённого расчёта дальнодействующего отталкивания (Barnes–Hut).
+// Каждый узел хранит число бабблов и их центр масс. Если узел виден из точки под малым углом
+// (размер узла / расстояние до центра масс < theta), весь узел учитывается как одна точка с массой,
+// равной числу бабблов в нём. Это даёт O(n log n) на итерацию вместо O(n^2).
+// Узлы хранятся в параллельных массивах и переиспользуются между построениями.
+public class BubbleQuadTree {
+	final int LEAF_SIZE = 4; // бабблов в листе, их вклад считается точно
+	final int MAX_DEPTH = 24; // ограничение глубины для совпадающих точек
+
+	private int 	numNodes;
+	private float[] nodeCenterX = new float[0], nodeCenterY = new float[0], nodeHalfSize = new float[0]; // квадрат узла
+	private float[] nodeMassX = new float[0], nodeMassY = new float[0]; // центр масс
+	private int[] 	nodeMass = new int[0]; // число бабблов в узле
+	private int[] 	nodeChildren = new int[0]; // по 4 на узел, -1 если потомка нет. У листа все -1
+	private int[] 	nodeItemStart = new int[0], nodeItemEnd = new int[0]; // диапазон бабблов узла в items
+
+	private int[] 	items = new int[0]; // индексы бабблов, сгруппированные по узлам
+	private float[] posX, posY;
+
+	// строит дерево по положениям бабблов. Массивы не копируются: листья читают текущие положения
+	public void build(float[] posX, float[] posY, int count) {
+		this.posX = posX;
+		this.posY = posY;
+		this.numNodes = 0;
+
+		if(this.items.length < count)
+			this.items = new int[count];
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+		for(int i = 0; i < count; i++) {
+			this.items[i] = i;
+
+			minX = Math.min(minX, posX[i]);
+			minY = Math.min(minY, posY[i]);
+			maxX = Math.max(maxX, posX[i]);
+			maxY = Math.max(maxY, posY[i]);
+		}
+
+		if(count == 0)
+			return;
+
+		float halfSize = Math.max(maxX - minX, maxY - minY)*0.5f + 1.0f;
+
+		buildNode(0, count, (minX + maxX)*0.5f, (minY + maxY)*0.5f, halfSize, 0);
+	}
+
+	// Добавляет к result сумму dir/dist^2 от всех бабблов, кроме self (dir - единичный вектор от баббла к точке).
+	// При dist^2 < 0.001 множитель 1/dist^2 ограничивается единицей, как и в точном расчёте
+	public void addInverseSquareForce(int self, float x, float y, float theta, PVector result) {
+		if(this.numNodes > 0)
+			accumulate(0, self, x, y, theta*theta, result);
+	}
+
+	private int buildNode(int start, int end, float centerX, float centerY, float halfSize, int depth) {
+		int node = allocNode();
+
+		this.nodeCenterX[node] = centerX;
+		this.nodeCenterY[node] = centerY;
+		this.nodeHalfSize[node] = halfSize;
+		this.nodeItemStart[node] = start;
+		this.nodeItemEnd[node] = end;
+		this.nodeMass[node] = end - start;
+
+		float massX = 0.0f, massY = 0.0f;
+
+		for(int k = start; k < end; k++) {
+			massX += this.posX[this.items[k]];
+			massY += this.posY[this.items[k]];
+		}
+
+		this.nodeMassX[node] = massX/(end - start);
+		this.nodeMassY[node] = massY/(end - start);
+
+		for(int q = 0; q < 4; q++)
+			this.nodeChildren[node*4 + q] = -1;
+
+		if(end - start <= LEAF_SIZE || depth >= MAX_DEPTH)
+			return node;
+
+		// разбиение на квадранты: сначала по y, затем каждую половину по x
+		int splitY = partition(start, end, centerY, false);
+		int splitTop = partition(start, splitY, centerX, true);
+		int splitBottom = partition(splitY, end, centerX, true);
+
+		float quarter = halfSize*0.5f;
+
+		// квадранты: 0 - левый верхний, 1 - правый верхний, 2 - левый нижний, 3 - правый нижний
+		for(int q = 0; q < 4; q++) {
+			int childStart = q == 0 ? start : q == 1 ? splitTop : q == 2 ? splitY : splitBottom;
+			int childEnd = q == 0 ? splitTop : q == 1 ? splitY : q == 2 ? splitBottom : end;
+
+			if(childStart == childEnd)
+				continue;
+
+			float childX = centerX + ((q & 1) == 0 ? -quarter : quarter);
+			float childY = centerY + (q < 2 ? -quarter : quarter);
+
+			int child = buildNode(childStart, childEnd, childX, childY, quarter, depth + 1);
+
+			this.nodeChildren[node*4 + q] = child;
+		}
+
+		return node;
+	}
+
+	// переставляет items[start..end) так, что сначала идут бабблы с координатой меньше split. Возвращает границу
+	private int partition(int start, int end, float split, boolean byX) {
+		int left = start, right = end - 1;
+
+		while(left <= right) {
+			int item = this.items[left];
+
+			float coord = byX ? this.posX[item] : this.posY[item];
+
+			if(coord < split) {
+				left++;
+			} else {
+				this.items[left] = this.items[right];
+				this.items[right] = item;
+				right--;
+			}
+		}
+
+		return left;
+	}
+
+	private void accumulate(int node, int self, float x, float y, float thetaSq, PVector result) {
+		int firstChild = -1;
+
+		for(int q = 0; q < 4 && firstChild < 0; q++)
+			firstChild = this.nodeChildren[node*4 + q];
+
+		if(firstChild < 0) { // лист, считаем точно
+			for(int k = this.nodeItemStart[node]; k < this.nodeItemEnd[node]; k++) {
+				int item = this.items[k];
+
+				if(item != self)
+					addTerm(x - this.posX[item], y - this.posY[item], 1.0f, result);
+			}
+
+			return;
+		}
+
+		float deltaX = x - this.nodeMassX[node];
+		float deltaY = y - this.nodeMassY[node];
+
+		float size = this.nodeHalfSize[node]*2.0f;
+
+		// узел, содержащий саму точку, всегда раскрываем, чтобы не учитывать баббл сам на себя
+		boolean containsPoint = Math.abs(x - this.nodeCenterX[node]) <= this.nodeHalfSize[node]
+			&& Math.abs(y - this.nodeCenterY[node]) <= this.nodeHalfSize[node];
+
+		if(!containsPoint && size*size < thetaSq*(deltaX*deltaX + deltaY*deltaY)) {
+			addTerm(deltaX, deltaY, this.nodeMass[node], result);
+			return;
+		}
+
+		for(int q = 0; q < 4; q++) {
+			int child = this.nodeChildren[node*4 + q];
+
+			if(child >= 0)
+				accumulate(child, self, x, y, thetaSq, result);
+		}
+	}
+
+	private static void addTerm(float deltaX, float deltaY, float mass, PVector result) {
+		float sqrDist = deltaX*deltaX + deltaY*deltaY;
+		float dist = (float)Math.sqrt(sqrDist);
+
+		if(dist <= 0.0f)
+			return;
+
+		float invSqrDist = sqrDist < 0.001f ? 1.0f : 1.0f/sqrDist;
+
+		result.x += deltaX/dist*invSqrDist*mass;
+		result.y += deltaY/dist*invSqrDist*mass;
+	}
+
+	private int allocNode() {
+		if(this.numNodes == this.nodeMass.length) {
+			int capacity = Math.max(16, this.numNodes*2);
+
+			this.nodeCenterX = Arrays.copyOf(this.nodeCenterX, capacity);
+			this.nodeCenterY = Arrays.copyOf(this.nodeCenterY, capacity);
+			this.nodeHalfSize = Arrays.copyOf(this.nodeHalfSize, capacity);
+			this.nodeMassX = Arrays.copyOf(this.nodeMassX, capacity);
+			this.nodeMassY = Arrays.copyOf(this.nodeMassY, capacity);
+			this.nodeMass = Arrays.copyOf(this.nodeMass, capacity);
+			this.nodeChildren = Arrays.copyOf(this.nodeChildren, capacity*4);
+			this.nodeItemStart = Arrays.copyOf(this.nodeItemStart, capacity);
+			this.nodeItemEnd = Arrays.copyOf(this.nodeItemEnd, capacity);
+		}
+
+		return this.numNodes++;
+	}
+}
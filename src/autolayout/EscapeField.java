@@ -0,0 +1,143 @@
+package autolayout;
+
+import processing.core.*;
+
+// Поле выхода с силуэта: для каждой точки растра - вектор к центру ближайшей свободной (нулевого веса) точки.
+// Строится точным евклидовым преобразованием расстояний (Felzenszwalb, Huttenlocher) по растру силуэта,
+// дополненному рамкой из свободных точек: за краем растра силуэта нет, туда тоже можно выйти.
+// Запрос по координатам - O(1), поэтому баббл на сплошной области сразу получает направление к ближайшему
+// свободному месту, а не к центру лёгкости большой области притяжения.
+// После построения не изменяется, может использоваться из нескольких потоков.
+public class EscapeField {
+	public final int 		width, height; // размеры с рамкой: на 2 больше растра силуэта
+	public final float 		left, top; // координаты левого верхнего угла точки (0, 0) с учётом рамки
+	public final float 		cellSize;
+
+	// вектор от центра точки к центру ближайшей свободной точки, построчно. У свободных точек нулевой
+	public final float[] 	escapeX, escapeY;
+
+	public EscapeField(Silhouette silhouette) {
+		this.width = silhouette.width + 2;
+		this.height = silhouette.height + 2;
+		this.cellSize = silhouette.pointSize;
+		this.left = silhouette.left - this.cellSize;
+		this.top = silhouette.top - this.cellSize;
+
+		int count = this.width*this.height;
+
+		// 1. по столбцам: ближайшая свободная точка столбца (номер строки). В рамке свободна каждая первая и последняя
+		int[] nearestRow = new int[count];
+
+		for(int i = 0; i < this.width; i++) {
+			int last = -1;
+
+			for(int j = 0; j < this.height; j++) {
+				if(isFree(silhouette, i, j))
+					last = j;
+
+				nearestRow[j*this.width + i] = last;
+			}
+
+			last = -1;
+
+			for(int j = this.height - 1; j >= 0; j--) {
+				if(isFree(silhouette, i, j))
+					last = j;
+
+				int cell = j*this.width + i;
+
+				if(last >= 0 && (nearestRow[cell] < 0 || last - j < j - nearestRow[cell]))
+					nearestRow[cell] = last;
+			}
+		}
+
+		// 2. по строкам: нижняя огибающая парабол (i - q)^2 + dy(q)^2 даёт ближайший столбец
+		this.escapeX = new float[count];
+		this.escapeY = new float[count];
+
+		long[] g = new long[this.width];
+		int[] sites = new int[this.width];
+		double[] bounds = new double[this.width + 1];
+
+		for(int j = 0; j < this.height; j++) {
+			for(int i = 0; i < this.width; i++) {
+				long dy = nearestRow[j*this.width + i] - j;
+
+				g[i] = dy*dy;
+			}
+
+			int k = 0;
+
+			sites[0] = 0;
+			bounds[0] = Double.NEGATIVE_INFINITY;
+			bounds[1] = Double.POSITIVE_INFINITY;
+
+			for(int q = 1; q < this.width; q++) {
+				double s = intersection(g, sites[k], q);
+
+				while(s <= bounds[k]) {
+					k--;
+					s = intersection(g, sites[k], q);
+				}
+
+				k++;
+				sites[k] = q;
+				bounds[k] = s;
+				bounds[k + 1] = Double.POSITIVE_INFINITY;
+			}
+
+			k = 0;
+
+			for(int i = 0; i < this.width; i++) {
+				while(bounds[k + 1] < i)
+					k++;
+
+				int cell = j*this.width + i;
+				int nearestColumn = sites[k];
+
+				this.escapeX[cell] = (nearestColumn - i)*this.cellSize;
+				this.escapeY[cell] = (nearestRow[j*this.width + nearestColumn] - j)*this.cellSize;
+			}
+		}
+	}
+
+	// точка пересечения парабол с вершинами в столбцах p и q
+	private static double intersection(long[] g, int p, int q) {
+		return ((g[q] + (long)q*q) - (g[p] + (long)p*p))/(2.0*(q - p));
+	}
+
+	// точка (i, j) растра с рамкой свободна, если она в рамке или её вес нулевой
+	private static boolean isFree(Silhouette silhouette, int i, int j) {
+		if(i == 0 || j == 0 || i > silhouette.width || j > silhouette.height)
+			return true;
+
+		return silhouette.weights[(j - 1)*silhouette.width + (i - 1)] <= 0.0f;
+	}
+
+	// Записывает в dest вектор к ближайшей свободной точке из точки (x, y) и возвращает dest.
+	// Нулевой вектор - точка уже свободна (в том числе за пределами силуэта)
+	public PVector getEscape(float x, float y, PVector dest) {
+		int i = (int)Math.floor((x - this.left)/this.cellSize);
+		int j = (int)Math.floor((y - this.top)/this.cellSize);
+
+		if(i < 0 || j < 0 || i >= this.width || j >= this.height)
+			return dest.set(0.0f, 0.0f);
+
+		int cell = j*this.width + i;
+
+		return dest.set(this.escapeX[cell], this.escapeY[cell]);
+	}
+
+	// расстояние до ближайшей свободной точки (между центрами точек), 0 для свободной
+	public float getDistance(float x, float y) {
+		int i = (int)Math.floor((x - this.left)/this.cellSize);
+		int j = (int)Math.floor((y - this.top)/this.cellSize);
+
+		if(i < 0 || j < 0 || i >= this.width || j >= this.height)
+			return 0.0f;
+
+		int cell = j*this.width + i;
+
+		return (float)Math.sqrt(this.escapeX[cell]*this.escapeX[cell] + this.escapeY[cell]*this.escapeY[cell]);
+	}
+}
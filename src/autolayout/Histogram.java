@@ -0,0 +1,190 @@
+package autolayout;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.*;
+
+// Гистограмма неотрицательных целых значений с логарифмически-линейными корзинами (как в HdrHistogram):
+// значения меньше SUB_BUCKET_COUNT хранятся точно, большие - в корзинах шириной 1/64 от степени двойки,
+// то есть с относительной погрешностью меньше 1%. Размер не зависит от числа значений.
+// Запись без блокировок, можно вызывать из нескольких потоков.
+public class Histogram {
+	static final int SUB_BUCKET_BITS 	= 7;
+	static final int SUB_BUCKET_COUNT 	= 1 << SUB_BUCKET_BITS; // точные значения 0..127
+	static final int HALF_COUNT 		= SUB_BUCKET_COUNT/2; // корзин на каждую следующую степень двойки
+
+	static final int NUM_BUCKETS 		= SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS)*HALF_COUNT;
+
+	public final String name;
+	public final String unit;
+
+	private final AtomicLongArray 	counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong 		totalCount = new AtomicLong();
+	private final AtomicLong 		sum = new AtomicLong();
+	private final AtomicLong 		min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong 		max = new AtomicLong(Long.MIN_VALUE);
+
+	public Histogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public void record(long value) {
+		value = Math.max(0, value);
+
+		this.counts.incrementAndGet(getBucket(value));
+		this.totalCount.incrementAndGet();
+		this.sum.addAndGet(value);
+		this.min.accumulateAndGet(value, Math::min);
+		this.max.accumulateAndGet(value, Math::max);
+	}
+
+	// добавляет значения другой гистограммы (например, собранной в другом потоке или другой копией задачи)
+	public void add(Histogram other) {
+		if(other.getCount() == 0)
+			return;
+
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			long count = other.counts.get(i);
+
+			if(count > 0)
+				this.counts.addAndGet(i, count);
+		}
+
+		this.totalCount.addAndGet(other.getCount());
+		this.sum.addAndGet(other.getSum());
+		this.min.accumulateAndGet(other.getMin(), Math::min);
+		this.max.accumulateAndGet(other.getMax(), Math::max);
+	}
+
+	public void reset() {
+		for(int i = 0; i < NUM_BUCKETS; i++)
+			this.counts.set(i, 0);
+
+		this.totalCount.set(0);
+		this.sum.set(0);
+		this.min.set(Long.MAX_VALUE);
+		this.max.set(Long.MIN_VALUE);
+	}
+
+	public long getCount() {
+		return this.totalCount.get();
+	}
+
+	public long getSum() {
+		return this.sum.get();
+	}
+
+	public long getMin() {
+		return getCount() > 0 ? this.min.get() : 0;
+	}
+
+	public long getMax() {
+		return getCount() > 0 ? this.max.get() : 0;
+	}
+
+	public double getMean() {
+		long count = getCount();
+
+		return count > 0 ? (double)getSum()/count : 0.0;
+	}
+
+	// значение, не превышаемое заданной долей (0-100) записанных значений, с точностью до корзины
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+
+		if(count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long)Math.ceil(percentile/100.0*count));
+		long seen = 0;
+
+		for(int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			seen += this.counts.get(bucket);
+
+			if(seen >= rank)
+				return Math.min(getMax(), Math.max(getMin(), getBucketValue(bucket)));
+		}
+
+		return getMax();
+	}
+
+	// Распределение по процентилям в формате .hgrm (HdrHistogram outputPercentileDistribution),
+	// который читают HistogramLogAnalyzer и plotFiles.html. Строка на каждую непустую корзину:
+	// верхняя граница корзины, доля значений не больше неё, их число и 1/(1 - доля)
+	public void printPercentileDistribution(PrintStream out) {
+		long count = getCount();
+
+		out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+		out.println();
+
+		long seen = 0;
+		double sumSq = 0.0, mean = getMean();
+
+		for(int bucket = 0; bucket < NUM_BUCKETS && seen < count; bucket++) {
+			long bucketCount = this.counts.get(bucket);
+
+			if(bucketCount == 0)
+				continue;
+
+			seen += bucketCount;
+
+			double deviation = getBucketValue(bucket) - mean;
+			sumSq += deviation*deviation*bucketCount;
+
+			double percentile = (double)seen/count;
+			long value = Math.min(getMax(), getBucketHighValue(bucket));
+
+			if(seen < count)
+				out.println(String.format(Locale.ROOT, "%12d %2.12f %10d %14.2f", value, percentile, seen, 1.0/(1.0 - percentile)));
+			else
+				out.println(String.format(Locale.ROOT, "%12d %2.12f %10d", value, percentile, seen));
+		}
+
+		double stdDeviation = count > 0 ? Math.sqrt(sumSq/count) : 0.0;
+
+		out.println(String.format(Locale.ROOT, "#[Mean    = %12.3f, StdDeviation   = %12.3f]", mean, stdDeviation));
+		out.println(String.format(Locale.ROOT, "#[Max     = %12d, Total count    = %12d]", getMax(), count));
+		out.println(String.format(Locale.ROOT, "#[Buckets = %12d, SubBuckets     = %12d]", NUM_BUCKETS, SUB_BUCKET_COUNT));
+	}
+
+	static int getBucket(long value) {
+		if(value < SUB_BUCKET_COUNT)
+			return (int)value;
+
+		// старший бит и следующие за ним 6 бит определяют корзину
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+
+		int mantissa = (int)(value >>> shift); // HALF_COUNT..SUB_BUCKET_COUNT - 1
+
+		return SUB_BUCKET_COUNT + (shift - 1)*HALF_COUNT + mantissa - HALF_COUNT;
+	}
+
+	// середина диапазона значений корзины
+	static long getBucketValue(int bucket) {
+		if(bucket < SUB_BUCKET_COUNT)
+			return bucket;
+
+		int shift = (bucket - SUB_BUCKET_COUNT)/HALF_COUNT + 1;
+		long mantissa = (bucket - SUB_BUCKET_COUNT)%HALF_COUNT + HALF_COUNT;
+
+		return (mantissa << shift) + (1L << (shift - 1));
+	}
+
+	// наибольшее значение, попадающее в корзину
+	static long getBucketHighValue(int bucket) {
+		if(bucket < SUB_BUCKET_COUNT)
+			return bucket;
+
+		int shift = (bucket - SUB_BUCKET_COUNT)/HALF_COUNT + 1;
+		long mantissa = (bucket - SUB_BUCKET_COUNT)%HALF_COUNT + HALF_COUNT;
+
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-36s %10d %12d %12d %12d %12d %12d %14.1f  %s", this.name, getCount(), getMin(),
+			getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getMax(), getMean(), this.unit);
+	}
+}
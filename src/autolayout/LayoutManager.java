@@ -0,0 +1,2084 @@
+package autolayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import processing.core.*;
+
+public class LayoutManager {
+	// для определения коллизий и сил используем больший прямоугольник, чем бабл, чтобы было пустое пространство между
+	final float MARGIN_SILHOUETTE_COLLISION 		= 150.0f;
+	final float MARGIN_BUBBLE_COLLISION				= 20.0f;
+	final float SIL_POINT_SIZE 						= 60.0f;
+	final float SIL_GRID_CELL_SIZE					= 120.0f; // размер ячейки индекса точек силуэта
+	final float PIN_GRID_CELL_SIZE					= 100.0f; // размер ячейки индекса пинов
+
+	// коэффициенты сил
+	final float FORCE_FACTOR_SILHOUTTE					= 0.75f;
+	final float FORCE_FACTOR_ATTRACTION_POINT			= 3.0f;
+	final float FORCE_FACTOR_BUBBLE_LONGRANGE			= 5.0f;
+	final float FORCE_FACTOR_BUBBLE_INTERSECTION		= 1.0f;
+	final float FORCE_FACTOR_UI_INTERSECTION			= 1.0f;
+	final float FORCE_FACTOR_PINS						= 1.0f;
+
+	final float 	MIN_SIL_POINT_WEIGHT			= 0.05f; // точки силуэта с меньшим весом не учитываются
+
+	final int 		NUM_ATTRACTIONS_ON_AXIS 		= 2;
+	final int 		NUM_BUBBLES 					= 5;
+	final int 		MAX_ITERATIONS 					= 50; // ограничение числа итераций по умолчанию, см. maxIterations
+
+	// Критерий сходимости. Проверяется после подключения всех сил,
+	// расчёт останавливается, если условия выполняются CONVERGENCE_ITERATIONS итераций подряд.
+	// Силы нормированы, поэтому бабблы не останавливаются совсем, а дрожат около равновесия с постоянной
+	// амплитудой. Поэтому энергия сравнивается не с абсолютным порогом, а с наибольшей энергией после
+	// подключения всех сил
+	final float 	CONVERGENCE_RELATIVE_ENERGY		= 0.1f; // доля наибольшей кинетической энергии бабблов
+	final float 	CONVERGENCE_OVERLAP_AREA		= 1.0f; // остаточная площадь перекрытий с бабблами и UI (без полей)
+	final int 		CONVERGENCE_ITERATIONS			= 3;
+
+	// Главной задачей оптимизации является покидание бабблами силуэта модели,
+	// остальные условия вторичны. Поэтому дополнительные условия подключаются не сразу,
+	// давая возможность особенно хорошо решить основную задачу.
+	// Константы ниже определяют итерацию, с которой подключается расчёт дополнительных задач (сил)
+	final int 		ITER_START_CALC_BUBBLES_LONGRANGE		= 15;
+	final int 		ITER_START_CALC_BUBBLES_INTERSECTION 	= 20;
+	final int 		ITER_START_CALC_PINS 					= 15;
+
+	// при rampInForces дополнительная сила нарастает от нуля до полной за столько итераций после подключения
+	final int 		FORCE_RAMP_ITERATIONS					= 10;
+
+	// Адаптивный шаг интеграторов VERLET и FIRE (см. Integrator). Шаг свой у каждого баббла: растёт, пока баббл
+	// больше FIRE_MIN_STEPS итераций подряд движется по силе, и уменьшается, когда сила разворачивает его
+	final float 	TIME_STEP_MIN							= 0.25f;
+	final float 	TIME_STEP_MAX							= 2.0f;
+	final float 	TIME_STEP_INCREASE						= 1.1f;
+	final float 	TIME_STEP_DECREASE						= 0.5f;
+	final int 		FIRE_MIN_STEPS							= 5;
+	final float 	FIRE_ALPHA_START						= 0.1f; // доля направления силы в скорости после разворота
+	final float 	FIRE_ALPHA_DECREASE						= 0.99f;
+
+	// Пирамида силуэта (см. useSilhouettePyramid). Баббл начинает на самом грубом уровне и переходит
+	// на более подробный, когда его смещение за итерацию падает ниже порога: пока баббл движется быстро,
+	// мелкие детали силуэта ничего не меняют. С подключения дальнодействия все бабблы на полном разрешении
+	final int 		SIL_PYRAMID_LEVELS						= 3; // включая полное разрешение
+	final float 	SIL_PYRAMID_REFINE_DISPLACEMENT			= 4.0f;
+	final int 		SIL_PYRAMID_MIN_LEVEL_ITERATIONS		= 2; // минимальное число итераций на уровне
+
+	// Инкрементальный пересчёт (relayout): двигаются только бабблы, чей прямоугольник с полями
+	// ближе этого расстояния к изменённой области, остальные остаются на месте
+	final float 	RELAYOUT_NEIGHBOURHOOD					= 300.0f;
+
+	// Распутывание линий к пинам (untangleLeaders) выполняется раз в столько итераций
+	final int 		LEADER_UNTANGLE_INTERVAL				= 10;
+
+	// способ расчёта выталкивающей силы силуэта
+	public enum SilhouetteForceMode {
+		POINTS,		// сумма сил от каждой перекрытой точки силуэта (эталонный способ)
+		INTEGRAL,	// по таблицам сумм: сила направлена от центра масс перекрытого силуэта, O(1) на баббл
+		REGIONS		// как POINTS, но по блокам точек с почти одинаковым весом (Silhouette.getRegions()): на сплошных областях элементов в разы меньше
+	}
+
+	// способ интегрирования движения бабблов
+	public enum Integrator {
+		EULER,		// полунеявный Эйлер с постоянным шагом и трением (эталонный способ)
+		VERLET,		// скоростной Верле с трением и адаптивным шагом баббла
+		FIRE		// FIRE: без трения, скорость поворачивается к силе, при развороте силы баббл останавливается
+	}
+
+	// способ расчёта дальнодействующего отталкивания бабблов
+	public enum LongRangeMode {
+		EXACT,		// сумма по всем парам, O(n^2). Эталон для оценки точности
+		BARNES_HUT	// приближение по квадродереву, O(n log n). Точность задаётся barnesHutTheta
+	}
+
+	// причина остановки расчёта
+	public enum StopReason {
+		NONE,			// расчёт не завершён
+		CONVERGED,		// бабблы остановились, перекрытий не осталось
+		STALLED,		// бабблы остановились, но перекрытия остались и больше не уменьшаются
+		MAX_ITERATIONS,	// достигнуто ограничение числа итераций
+		GOOD_ENOUGH		// оценка раскладки не хуже goodEnoughScore
+	}
+
+	public class Pin {
+		public PVector pos;
+		int index; // номер пина в LayoutManager.pins, назначается в packBubbles()
+
+		Pin(PVector p) {
+			this.pos = p;
+		}
+	}
+
+	public class Bubble {
+		ArrayList<Pin> pins = new ArrayList<Pin>(); // здесь хранятся только ссылки на пины из массива LayoutManager.pins
+		public PVector pos, dim; // позиция центра бабла и его размеры
+		public PVector vel; // текущая скорость
+		int index; // номер баббла в LayoutManager.bubbles, назначается в packBubbles()
+
+		int silLevel = SIL_PYRAMID_LEVELS - 1; // уровень пирамиды силуэта, по которому считается выталкивающая сила
+		int silLevelIterations = 0; // сколько итераций баббл провёл на этом уровне
+
+		boolean frozen = false; // не двигается при инкрементальном пересчёте
+
+		// состояние интеграторов VERLET и FIRE
+		float timeStep = 1.0f; // адаптивный шаг
+		int numDownhillSteps = 0; // итераций подряд, на которых баббл двигался по силе
+		float fireAlpha = FIRE_ALPHA_START;
+		final PVector prevForce = new PVector(); // сила прошлой итерации для VERLET
+
+		// сбрасывает состояние интеграторов, когда накопленные шаг и сила больше не относятся к положению баббла
+		void resetIntegrator() {
+			this.timeStep = 1.0f;
+			this.numDownhillSteps = 0;
+			this.fireAlpha = FIRE_ALPHA_START;
+			this.prevForce.set(0.0f, 0.0f);
+		}
+
+		//визуальная отладка
+		public PVector intersectionCenter;
+		public boolean isGlobalresultForce = false; 
+
+		Bubble(PVector d) {
+			this.vel = new PVector(0.0f, 0.0f);
+
+			this.dim = d;
+		}
+
+		Bubble(Pin pin, PVector d) {
+			this.pins.add(pin);
+
+			this.pos = new PVector(pin.pos.x, pin.pos.y);
+
+			this.vel = new PVector(0.0f, 0.0f);
+
+			this.dim = d;
+		}
+
+		// рабочие объекты для расчёта сил баббла. Баббл считается одним потоком, поэтому они у каждого свои
+		final Rect 		rect = new Rect(), marginRect = new Rect();
+		final PVector 	force = new PVector(), partForce = new PVector(), shift = new PVector(), escape = new PVector();
+		final float[] 	silhouetteSums = new float[SilhouetteVectorKernel.NUM_SUMS];
+
+		public Rect getRect() { // возвращает прямоугольник баббла
+			return this.getRect(new Rect());
+		}
+
+		public Rect getRect(Rect dest) { // записывает прямоугольник баббла в dest
+			return this.getMarginRect(0.0f, dest);
+		}
+
+		public Rect getMarginRect(float margin) { // возвращает прямоугольник с полями
+			return this.getMarginRect(margin, new Rect());
+		}
+
+		public Rect getMarginRect(float margin, Rect dest) { // записывает прямоугольник с полями в dest
+			float halfDimX = this.dim.x*0.5f, halfDimY = this.dim.y*0.5f;
+
+			return dest.set(this.pos.x - halfDimX - margin, this.pos.y - halfDimY - margin,
+				this.pos.x + halfDimX + margin, this.pos.y + halfDimY + margin);
+		}
+	}
+
+	/*
+	Абстракция AttractionArea нужна для "выталкивания" баббла со сплошных областей силуэта.
+	На сплошных областях нет градиента (перепада) силуэта, а значит и нет выталкивающей силы.
+	Чтобы столкнуть баббл туда, где скорее всего будет уже градиент (и он дальше поедет сам),
+	мы используем разбиение вьюпорта на несколько одинаковых прямоугольных областей.
+
+	Для каждой такой области вычисляется точка "центра лёгкости" (attractionPoint) - 
+	точка где меньше всего силуэт в заданной области.
+
+	Туда и будет стремиться баббл при отстутвии силы силуэта.
+	*/
+
+	public class AttractionArea {
+		public Rect 	rect;
+		public PVector 	attractionPoint;
+		public float	weight;
+
+		AttractionArea(Rect r) {
+			this.rect = r;
+		}
+	}
+
+	private ArrayList<Pin>  			pins 			= new ArrayList<Pin>();
+	private ArrayList<Bubble> 			bubbles 		= new ArrayList<Bubble>();
+	// список областей не меняется после построения, calculateAttractionAreas() заменяет его новым (на него ссылаются снимки)
+	private List<AttractionArea> 		attractionAreas = new ArrayList<AttractionArea>();
+	private ArrayList<Rect>				uiElements		= new ArrayList<Rect>();
+
+	private Silhouette					silhouette; // упакованный силуэт с индексом и таблицами сумм, строится в init()
+	private BubbleBuffer				packed			= new BubbleBuffer(); // упакованное состояние бабблов текущей итерации
+	private BubbleQuadTree				longRangeTree	= new BubbleQuadTree(); // строится в начале итерации в режиме BARNES_HUT
+	private SweepAndPrune				broadphase		= new SweepAndPrune(); // сохраняет порядок бабблов между итерациями
+	private LeaderCrossings				leaderCrossings	= new LeaderCrossings();
+
+	// индекс пинов, перестраивается при добавлении и удалении бабблов.
+	// Положения пинов считаются неизменными после добавления баббла
+	private SpatialGrid					pinGrid;
+	private boolean						pinsChanged		= true;
+
+	private 		PApplet pApplet;
+
+	public int 		posX, posY, areaWidth, areaHeight;
+
+	public int 		numIterations = 0;
+	public boolean 	calculationDone = false;
+	public StopReason stopReason = StopReason.NONE;
+
+	// показатели последней итерации, по ним проверяется сходимость
+	public float 	kineticEnergy, maxDisplacement, overlapArea;
+
+	private int 	numConvergedIterations = 0;
+	private int 	relayoutIteration = -1; // итерация начала инкрементального пересчёта, -1 - пересчёта нет
+	private float 	lastOverlapArea = Float.MAX_VALUE;
+	private float 	peakKineticEnergy = 0.0f; // наибольшая кинетическая энергия после подключения всех сил
+
+	// жёсткое ограничение числа итераций, обычно расчёт останавливается раньше по сходимости
+	public int 		maxIterations = MAX_ITERATIONS;
+
+	// расчёт останавливается, как только оценка раскладки (getQuality().getScore()) не хуже этой. Отрицательная - не используется
+	public float 	goodEnoughScore = -1.0f;
+
+	public SilhouetteForceMode silhouetteForceMode = SilhouetteForceMode.POINTS;
+
+	// в режиме POINTS точки силуэта обходятся векторами (SilhouetteVectorKernel). Работает, только если JVM запущена
+	// с --add-modules jdk.incubator.vector, иначе расчёт остаётся скалярным. Отличается от скалярного до округления float
+	public boolean			useVectorKernel = false;
+
+	static final boolean 	VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	// Баббл на сплошной области силуэта (где нет перепада веса) выталкивается по полю выхода (EscapeField)
+	// к ближайшей свободной точке, а не к центру лёгкости области притяжения. Области притяжения при этом не строятся
+	public boolean			useEscapeField = false;
+
+	// в режимах POINTS и REGIONS первые итерации считаются по грубым уровням пирамиды силуэта
+	public boolean			useSilhouettePyramid = false;
+
+	// VERLET и FIRE доходят до равновесия за меньшее число итераций, EULER - эталон
+	public Integrator		integrator = Integrator.EULER;
+
+	// Дополнительные силы (дальнодействие, столкновения бабблов, пины) подключаются не скачком, а нарастают
+	// за FORCE_RAMP_ITERATIONS итераций: скачок силы раскачивает уже вытолкнутые с силуэта бабблы.
+	// Проверка сходимости начинается после выхода всех сил на полную величину
+	public boolean			rampInForces = false;
+
+	public LongRangeMode	longRangeMode = LongRangeMode.EXACT;
+	public float			barnesHutTheta = 0.5f; // угол раскрытия узла: меньше - точнее и медленнее, 0 - точный расчёт
+
+	// пересечения бабблов ищутся широкой фазой sweep-and-prune один раз за итерацию, сила от пары
+	// применяется к обоим бабблам сразу. Все бабблы видят положения на начало итерации
+	public boolean			useSweepAndPrune = false;
+
+	// после подключения всех сил бабблы, чьи линии к пинам пересекаются, периодически меняются местами,
+	// если это сокращает суммарную длину их линий. Силы сами не распутывают линии, только раздвигают бабблы
+	public boolean			untangleLeaders = false;
+
+	// Параллельный режим: силы всех бабблов считаются в пуле потоков по состоянию на начало итерации
+	// (все бабблы видят одни и те же положения), затем интегрируются. В последовательном режиме
+	// баббл видит уже сдвинутые на этой итерации бабблы, поэтому результаты режимов различаются
+	public boolean			parallel = false;
+	public int				parallelism = Runtime.getRuntime().availableProcessors();
+
+	// Пулы параллельного режима общие для всех LayoutManager, по пулу на значение parallelism: сервис, создающий
+	// много раскладок, не копит простаивающие пулы. Потоки пула - демоны, и завершаются после простоя
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> FORCE_POOLS = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	// кеш предобработанных силуэтов. Если задан, init() берёт силуэт из кеша, не декодируя изображение
+	// и не повторяя предобработку. Один кеш можно отдать нескольким LayoutManager
+	public SilhouetteCache	silhouetteCache = null;
+
+	// метрики расчёта (время сил и итераций, память, проверки пересечений). null - не собираются
+	public SolveMetrics		metrics = null;
+
+	// источник случайности для resetBubbles() и случайных размеров бабблов. Для повторяемого результата задать seed
+	public Random			random = new Random();
+
+	public Rect		viewport;
+
+	// Публикация снимков для отрисовки из другого потока: после каждой итерации process() кладёт
+	// неизменяемый LayoutSnapshot в snapshot, draw() рисует последний опубликованный снимок без блокировок.
+	// Без публикации draw() снимает состояние сам и должен вызываться в потоке расчёта
+	public boolean			publishSnapshots = false;
+
+	private final AtomicReference<LayoutSnapshot> snapshot = new AtomicReference<LayoutSnapshot>();
+
+	// версия неизменных слоёв отрисовки (силуэт, UI, области притяжения, вьюпорт), растёт при их изменении
+	private int				staticVersion = 0;
+
+	// буфер неизменного фона и параметры, с которыми он нарисован. Используется только в потоке отрисовки
+	private PGraphics		staticLayer;
+	private int				staticLayerVersion = -1;
+	private int				staticLayerPosX, staticLayerPosY, staticLayerWidth, staticLayerHeight;
+
+	public LayoutManager() { // headless-режим: без PApplet, только расчёт (draw() и init(String) недоступны)
+		this(null);
+	}
+
+	public LayoutManager(PApplet p) {
+		this.pApplet = p;
+		viewport = new Rect(0, 0, 1000, 1000); // произвольные виртуальные координаты
+	}
+
+	public void calculateAttractionAreas() { // вычисляется один раз перед началом итераций
+		List<AttractionArea> attractionAreas = new ArrayList<AttractionArea>();
+
+		if(this.useEscapeField) { // области не нужны, их заменяет поле выхода силуэта
+			this.attractionAreas = attractionAreas;
+			this.staticVersion++;
+
+			return;
+		}
+
+		float attractionAreaWidth = viewport.getWidth()/NUM_ATTRACTIONS_ON_AXIS;
+		float attractionAreaHeight = viewport.getHeight()/NUM_ATTRACTIONS_ON_AXIS;
+
+		for(int i = 0; i < this.NUM_ATTRACTIONS_ON_AXIS; i++)
+			for(int j = 0; j < this.NUM_ATTRACTIONS_ON_AXIS; j++) {
+				AttractionArea area = new AttractionArea(
+						new Rect(i*attractionAreaWidth, j*attractionAreaHeight,
+						(i+1)*attractionAreaWidth, (j+1)*attractionAreaHeight));
+
+				attractionAreas.add(area);
+			}
+
+		for(AttractionArea area: attractionAreas) {
+			PVector silWeightCenter = new PVector(0.0f, 0.0f);
+
+			PVector areaCenter = area.rect.getCenter();
+
+			// вес силуэта в области и его центр масс берутся из таблиц сумм
+			float totalSilWeight = (float)this.silhouette.integral.getWeight(area.rect);
+
+			if(totalSilWeight > 0.0f) {
+				silWeightCenter.x = (float)this.silhouette.integral.getMomentX(area.rect) - areaCenter.x*totalSilWeight;
+				silWeightCenter.y = (float)this.silhouette.integral.getMomentY(area.rect) - areaCenter.y*totalSilWeight;
+			}
+
+			float areaSquare = area.rect.getSquare();
+
+			area.weight = (areaSquare - totalSilWeight)/areaSquare;
+
+			if(totalSilWeight > 0.0f)
+				silWeightCenter.mult(1.0f/totalSilWeight);
+
+			float silWeightScale = areaSquare/(areaSquare - totalSilWeight);
+
+			silWeightCenter.mult(silWeightScale);
+
+			PVector attractionPoint = PVector.sub(area.rect.getCenter(), silWeightCenter);
+
+			area.attractionPoint = attractionPoint;
+		}	
+
+		this.attractionAreas = attractionAreas;
+		this.staticVersion++;
+	}
+
+	// добавляет баббл с заданными размерами и пинами. Начальное положение баббла - центр его пинов
+	public Bubble addBubble(PVector dim, PVector... pinPositions) {
+		if(pinPositions.length == 0)
+			throw new IllegalArgumentException("Bubble must have at least one pin");
+
+		Bubble bubble = new Bubble(dim);
+
+		bubble.pos = new PVector(0.0f, 0.0f);
+
+		for(PVector pinPos : pinPositions) {
+			Pin pin = new Pin(pinPos);
+
+			this.pins.add(pin);
+			bubble.pins.add(pin);
+
+			bubble.pos.add(pinPos);
+		}
+
+		bubble.pos.mult(1.0f/pinPositions.length);
+
+		this.bubbles.add(bubble);
+
+		this.pinsChanged = true;
+
+		return bubble;
+	}
+
+	public void addBubbleWithRandomDim(PVector pos) {
+		PVector bubbleDim = new PVector(150 + this.random.nextFloat()*100, 20 + this.random.nextFloat()*100);
+
+		addBubble(bubbleDim, pos);
+	}
+
+	public void addBubbleWithRandomDimAndTwoPins(PVector pos1, PVector pos2) {
+		PVector bubbleDim = new PVector(150 + this.random.nextFloat()*100, 20 + this.random.nextFloat()*100);
+
+		addBubble(bubbleDim, pos1, pos2); // начальное положение баббла между своих пинов
+	}
+
+	// элемент интерфейса (препятствие), который бабблы должны обтекать
+	public void addUIElement(Rect rect) {
+		this.uiElements.add(rect);
+		this.staticVersion++;
+	}
+
+	// Удаляет баббл вместе с его пинами
+	public void removeBubble(Bubble bubble) {
+		if(!this.bubbles.remove(bubble))
+			throw new IllegalArgumentException("Bubble doesn't belong to this layout");
+
+		this.pins.removeAll(bubble.pins);
+
+		this.pinsChanged = true;
+	}
+
+	/*
+	Инкрементальный пересчёт. Вместо resetBubbles() и расчёта с нуля бабблы сохраняют положения и скорости,
+	а расчёт продолжается со всеми подключёнными силами до новой сходимости. Двигаются только бабблы
+	рядом с изменением (RELAYOUT_NEIGHBOURHOOD), остальные неподвижны: их силы не считаются,
+	но они по-прежнему отталкивают соседей. После остановки расчёта все бабблы снова подвижны.
+	Расчёт продолжается обычными вызовами process() или solve().
+	*/
+
+	// добавляет баббл в готовую раскладку и пересчитывает её вокруг нового баббла и его пинов
+	public Bubble addBubbleAndRelayout(PVector dim, PVector... pinPositions) {
+		Bubble bubble = addBubble(dim, pinPositions);
+
+		Rect region = bubble.getRect();
+
+		for(PVector pinPos : pinPositions) {
+			region.min.set(Math.min(region.min.x, pinPos.x), Math.min(region.min.y, pinPos.y));
+			region.max.set(Math.max(region.max.x, pinPos.x), Math.max(region.max.y, pinPos.y));
+		}
+
+		relayout(region);
+
+		return bubble;
+	}
+
+	// удаляет баббл и пересчитывает раскладку вокруг освободившегося места
+	public void removeBubbleAndRelayout(Bubble bubble) {
+		Rect region = bubble.getRect();
+
+		removeBubble(bubble);
+
+		relayout(region);
+	}
+
+	// меняет вьюпорт и пересчитывает бабблы, оказавшиеся рядом с его новыми границами или за ними
+	public void setViewport(Rect viewport) {
+		this.viewport = viewport;
+
+		calculateAttractionAreas();
+
+		for(Bubble bubble : this.bubbles) {
+			Rect rect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION + RELAYOUT_NEIGHBOURHOOD);
+
+			bubble.frozen = rect.min.x >= viewport.min.x && rect.min.y >= viewport.min.y
+				&& rect.max.x <= viewport.max.x && rect.max.y <= viewport.max.y;
+		}
+
+		restartCalculation();
+	}
+
+	// пересчёт после произвольного изменения в области region
+	public void relayout(Rect region) {
+		for(Bubble bubble : this.bubbles) {
+			Rect rect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION + RELAYOUT_NEIGHBOURHOOD);
+
+			bubble.frozen = rect.max.x < region.min.x || rect.min.x > region.max.x
+				|| rect.max.y < region.min.y || rect.min.y > region.max.y;
+		}
+
+		restartCalculation();
+	}
+
+	// продолжает расчёт с текущих положений так, будто все силы уже подключены
+	private void restartCalculation() {
+		this.numIterations = getLastStageIteration() + 1;
+		this.relayoutIteration = this.numIterations;
+
+		this.calculationDone = false;
+		this.stopReason = StopReason.NONE;
+		this.numConvergedIterations = 0;
+		this.lastOverlapArea = Float.MAX_VALUE;
+		this.peakKineticEnergy = 0.0f;
+
+		for(Bubble bubble : this.bubbles) {
+			bubble.silLevel = 0; // бабблы уже рядом с равновесием, грубые уровни силуэта не нужны
+			bubble.resetIntegrator(); // шаг и сила прошлого равновесия не подходят для изменённой задачи
+		}
+	}
+
+	// Силы неподвижного баббла считаются только на первой итерации пересчёта, чтобы заполнить
+	// его показатели качества после изменения нумерации бабблов. Дальше они не меняются
+	private boolean isEvaluated(Bubble bubble) {
+		return !bubble.frozen || this.numIterations == this.relayoutIteration;
+	}
+
+	public void init(String silImageFilename) {
+		File file = pApplet.dataFile(silImageFilename);
+
+		if(this.silhouetteCache != null && file.isFile()) {
+			try {
+				init(file.toPath());
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			PImage img = pApplet.loadImage(silImageFilename);
+
+			img.loadPixels();
+
+			init(img.pixels, img.width, img.height);
+		}
+
+		// элемент интерфейса, который бабблы должны обтекать
+		addUIElement(new Rect(this.viewport.min.x, this.viewport.max.y - 200, this.viewport.min.x + 300, this.viewport.max.y));
+	}
+
+	// инициализация силуэта из растра в формате PImage.pixels (ARGB, построчно). Не требует PApplet
+	public void init(int[] pixels, int imgWidth, int imgHeight) {
+		PVector center = this.viewport.getCenter();
+
+		if(this.silhouetteCache != null) {
+			try {
+				init(this.silhouetteCache.get(pixels, imgWidth, imgHeight, center.x, center.y,
+					SIL_POINT_SIZE, MIN_SIL_POINT_WEIGHT, SIL_GRID_CELL_SIZE));
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			return;
+		}
+
+		init(Silhouette.fromPixels(pixels, imgWidth, imgHeight, center.x, center.y,
+			SIL_POINT_SIZE, MIN_SIL_POINT_WEIGHT, SIL_GRID_CELL_SIZE));
+	}
+
+	// инициализация силуэта из файла изображения через кеш. Не требует PApplet
+	public void init(Path silImageFile) throws IOException {
+		if(this.silhouetteCache == null)
+			throw new IllegalStateException("Silhouette cache is not set");
+
+		PVector center = this.viewport.getCenter();
+
+		init(this.silhouetteCache.get(silImageFile, center.x, center.y,
+			SIL_POINT_SIZE, MIN_SIL_POINT_WEIGHT, SIL_GRID_CELL_SIZE));
+	}
+
+	// инициализация готовым силуэтом. Силуэт не изменяется, и может быть общим для нескольких LayoutManager
+	public void init(Silhouette silhouette) {
+		this.silhouette = silhouette;
+
+		if(this.useSilhouettePyramid) // уровни общие для всех, кто использует этот силуэт
+			silhouette.getLevel(SIL_PYRAMID_LEVELS - 1);
+
+		if(this.useEscapeField) // как и уровни, поле общее
+			silhouette.getEscapeField();
+
+		this.uiElements.clear();
+
+		calculateAttractionAreas();
+	}
+
+	// Копия задачи: тот же силуэт (общий), элементы UI, вьюпорт, настройки расчёта и бабблы в текущем
+	// положении с теми же пинами. Состояние итераций не копируется, копия начинает расчёт заново.
+	// Копия независима от оригинала, и её можно считать в другом потоке
+	public LayoutManager copy() {
+		LayoutManager copy = new LayoutManager(this.pApplet);
+
+		copy.posX = this.posX;
+		copy.posY = this.posY;
+		copy.areaWidth = this.areaWidth;
+		copy.areaHeight = this.areaHeight;
+		copy.viewport = new Rect(this.viewport.min.copy(), this.viewport.max.copy());
+
+		copy.maxIterations = this.maxIterations;
+		copy.goodEnoughScore = this.goodEnoughScore;
+		copy.silhouetteForceMode = this.silhouetteForceMode;
+		copy.useSilhouettePyramid = this.useSilhouettePyramid;
+		copy.useVectorKernel = this.useVectorKernel;
+		copy.useEscapeField = this.useEscapeField;
+		copy.integrator = this.integrator;
+		copy.rampInForces = this.rampInForces;
+		copy.longRangeMode = this.longRangeMode;
+		copy.barnesHutTheta = this.barnesHutTheta;
+		copy.useSweepAndPrune = this.useSweepAndPrune;
+		copy.untangleLeaders = this.untangleLeaders;
+		copy.parallel = this.parallel;
+		copy.parallelism = this.parallelism;
+		copy.silhouetteCache = this.silhouetteCache;
+		copy.metrics = this.metrics != null ? new SolveMetrics() : null; // собственные счётчики итерации у каждой копии
+
+		if(this.silhouette != null)
+			copy.init(this.silhouette);
+
+		for(Rect rect : this.uiElements)
+			copy.addUIElement(new Rect(rect.min.copy(), rect.max.copy()));
+
+		for(Bubble bubble : this.bubbles) {
+			PVector[] pinPositions = new PVector[bubble.pins.size()];
+
+			for(int i = 0; i < pinPositions.length; i++)
+				pinPositions[i] = bubble.pins.get(i).pos.copy();
+
+			Bubble bubbleCopy = copy.addBubble(bubble.dim.copy(), pinPositions);
+
+			bubbleCopy.pos.set(bubble.pos);
+			bubbleCopy.vel.set(bubble.vel);
+		}
+
+		return copy;
+	}
+
+	// Оценка раскладки по показателям, накопленным на последней итерации, O(n).
+	// Пересечения линий к пинам не считаются (leaderCrossings == -1)
+	public LayoutQuality getQuality() {
+		return getQuality(false);
+	}
+
+	// С countCrossings пересечения линий к пинам считаются заметающей прямой (LeaderCrossings), O((n + k) log n),
+	// где n - число линий, k - число пересечений
+	public LayoutQuality getQuality(boolean countCrossings) {
+		BubbleBuffer b = this.packed;
+
+		float silhouetteCoverage = 0.0f, bubbleOverlap = 0.0f, uiOverlap = 0.0f, leaderLength = 0.0f, clippedArea = 0.0f;
+
+		for(int i = 0; i < b.count; i++) {
+			silhouetteCoverage += b.silhouetteCoverage[i];
+			bubbleOverlap += b.bubbleOverlap[i];
+			uiOverlap += b.uiOverlap[i];
+			leaderLength += b.leaderLength[i];
+			clippedArea += b.clippedArea[i];
+		}
+
+		return new LayoutQuality(silhouetteCoverage, bubbleOverlap*0.5f, uiOverlap, leaderLength,
+			countCrossings ? countLeaderCrossings() : -1, clippedArea, areAllForcesActive());
+	}
+
+	// число пересекающихся пар линий от центров бабблов к пинам, O((n + k) log n) заметающей прямой.
+	// Линии одного баббла не учитываются
+	public int countLeaderCrossings() {
+		this.leaderCrossings.find(this.packed);
+
+		return this.leaderCrossings.numCrossings;
+	}
+
+	// строгое пересечение отрезков: касание концами и наложение на одной прямой не считаются
+	static boolean areSegmentsCrossing(float ax, float ay, float bx, float by, float cx, float cy, float dx, float dy) {
+		if(Math.max(ax, bx) < Math.min(cx, dx) || Math.max(cx, dx) < Math.min(ax, bx)
+				|| Math.max(ay, by) < Math.min(cy, dy) || Math.max(cy, dy) < Math.min(ay, by))
+			return false;
+
+		float abc = (bx - ax)*(cy - ay) - (by - ay)*(cx - ax);
+		float abd = (bx - ax)*(dy - ay) - (by - ay)*(dx - ax);
+		float cda = (dx - cx)*(ay - cy) - (dy - cy)*(ax - cx);
+		float cdb = (dx - cx)*(by - cy) - (dy - cy)*(bx - cx);
+
+		return ((abc > 0 && abd < 0) || (abc < 0 && abd > 0)) && ((cda > 0 && cdb < 0) || (cda < 0 && cdb > 0));
+	}
+
+	public void clearBubbles() {
+		this.pins.clear();
+		this.bubbles.clear();
+
+		this.pinsChanged = true;
+
+		resetCalculation();
+	}
+
+	// расчёт начнётся заново с первой стадии
+	private void resetCalculation() {
+		this.calculationDone = false;
+		this.stopReason = StopReason.NONE;
+		this.numIterations = 0;
+		this.numConvergedIterations = 0;
+		this.lastOverlapArea = Float.MAX_VALUE;
+		this.peakKineticEnergy = 0.0f;
+		this.relayoutIteration = -1;
+	}
+
+	public void resetBubbles() {
+		clearBubbles();
+
+		for(int i = 0; i < this.NUM_BUBBLES; i++)
+			addBubbleWithRandomDim(getRandomSilhouettePosition());
+
+		// моделирование сносок на наушниках, нижняя сноска амбушюры с двумя пинами
+		// addBubbleWithRandomDim(new PVector(450, 200));
+		// addBubbleWithRandomDimAndTwoPins(new PVector(270, 650), new PVector(650, 650));
+	}
+
+	// Переставляет имеющиеся бабблы в случайные точки силуэта по правилу resetBubbles(), сохраняя их размеры и пины,
+	// и начинает расчёт заново. Начальная раскладка для независимого расчёта той же задачи
+	public void placeBubblesRandomly() {
+		for(Bubble bubble : this.bubbles) {
+			bubble.pos.set(getRandomSilhouettePosition());
+			bubble.vel.set(0, 0);
+			bubble.silLevel = SIL_PYRAMID_LEVELS - 1;
+			bubble.silLevelIterations = 0;
+			bubble.frozen = false;
+			bubble.resetIntegrator();
+		}
+
+		resetCalculation();
+	}
+
+	// случайная позиция внутри случайной точки силуэта
+	private PVector getRandomSilhouettePosition() {
+		int silPointId = this.random.nextInt(this.silhouette.numPoints);
+
+		float halfPointSize = this.silhouette.pointSize/2;
+
+		float x = this.silhouette.pointX[silPointId] - halfPointSize + this.silhouette.pointSize*this.random.nextFloat();
+		float y = this.silhouette.pointY[silPointId] - halfPointSize + this.silhouette.pointSize*this.random.nextFloat();
+
+		return new PVector(x, y);
+	}
+	
+	// переводит экранные координаты (например, мыши) в координаты вьюпорта, обратно преобразованию в draw()
+	public PVector screenToViewport(float x, float y) {
+		LayoutSnapshot snapshot = this.publishSnapshots ? this.snapshot.get() : null;
+
+		Rect viewport = snapshot != null ? snapshot.viewport : this.viewport;
+
+		return new PVector((x - this.posX)*viewport.getWidth()/this.areaWidth, (y - this.posY)*viewport.getHeight()/this.areaHeight);
+	}
+
+	public void draw() {
+		// при публикации снимков расчёт может идти в другом потоке, поэтому состояние бабблов берётся только из снимка
+		LayoutSnapshot snapshot = this.publishSnapshots ? this.snapshot.get() : createSnapshot();
+
+		if(snapshot == null)
+			return;
+
+		Rect viewport = snapshot.viewport;
+
+		float xScale = this.areaWidth/viewport.getWidth();
+		float yScale = this.areaHeight/viewport.getHeight();
+
+		// неизменный фон (силуэт, области притяжения, UI и вьюпорт) рисуется один раз в буфер
+		// и каждый кадр только копируется на экран
+		updateStaticLayer(snapshot, xScale, yScale);
+
+		this.pApplet.image(this.staticLayer, 0, 0);
+
+		this.pApplet.pushMatrix();
+
+		this.pApplet.translate(this.posX, this.posY);
+		this.pApplet.scale(xScale, yScale);
+
+		// рисуем пины
+		
+		for (int pin = 0; pin < snapshot.numPins; pin++) {
+			this.pApplet.noStroke();
+			this.pApplet.fill(0xFFFFFF00);
+			pApplet.circle(snapshot.getPinX(pin), snapshot.getPinY(pin), 5.0f);
+		}
+
+		// рисуем бабблы
+
+		this.pApplet.strokeWeight(1.0f);
+
+		this.pApplet.stroke(0xFFFFFFFF, 100);
+		
+		pApplet.rectMode(PApplet.CORNERS);
+
+		for (int bubble = 0; bubble < snapshot.numBubbles; bubble++) {
+			Rect bubbleRect = snapshot.getBubbleRect(bubble);
+
+			/*
+			// для отладки можно рисовать поля бабла, используемые для отслеживания столкновений
+
+			Rect marginSilRect = bubble.getMarginRect(MARGIN_SILHOUETTE_COLLISION);
+			Rect marginOtherBubbleRect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION);
+
+			this.pApplet.stroke(0xFFFFFFAA, 100);
+			this.pApplet.fill(bubble.isGlobalresultForce ? 0xFFFFAAFF: 0xFFAAAAFF, 20);
+
+			pApplet.rect(marginSilRect.min.x, marginSilRect.min.y, 
+				marginSilRect.max.x, marginSilRect.max.y);
+
+			this.pApplet.stroke(0xFFFFFFAA, 100);
+				this.pApplet.fill(0xFFFFFFAA, 20);
+	
+			pApplet.rect(marginOtherBubbleRect.min.x, marginOtherBubbleRect.min.y, 
+			marginOtherBubbleRect.max.x, marginOtherBubbleRect.max.y);
+			*/
+
+			// рисуем сам бабл
+
+			this.pApplet.stroke(0xFFFFFFAA, 255);
+			this.pApplet.fill(0xFFFFFFAA, 100);
+
+			this.pApplet.rect(bubbleRect.min.x, bubbleRect.min.y, 
+				bubbleRect.max.x, bubbleRect.max.y);
+			
+			// рисуем линию к пинам
+
+			this.pApplet.stroke(0xFFFFFFFF, 100);
+
+			for(int link = 0; link < snapshot.getNumLinks(bubble); link++)
+				pApplet.line(snapshot.getBubbleCenterX(bubble), snapshot.getBubbleCenterY(bubble),
+					snapshot.getLinkX(bubble, link), snapshot.getLinkY(bubble, link));
+
+			/*
+			
+			// для отладки можно рисовать точку центра бокса пересечения бабблов
+
+			if(bubble.intersectionCenter != null) {
+				this.pApplet.fill(0xFFFFAAAA, 255);
+
+				pApplet.circle(bubble.intersectionCenter.x, bubble.intersectionCenter.y, 5.0f);
+			}
+			
+			*/
+		}
+
+		// рисуем тексты
+
+		this.pApplet.fill(0xFFFFFFFF, 255);
+
+		this.pApplet.textSize(20);
+		this.pApplet.text("Silhouette points: " + Integer.toString(snapshot.silhouette.numPoints), 20, 25);
+		this.pApplet.text("Bubbles: " + Integer.toString(snapshot.numBubbles), 20, 50);
+		this.pApplet.text("Iterations: " + Integer.toString(snapshot.numIterations), 20, 75);
+
+		this.pApplet.popMatrix();
+	}
+
+	// Перерисовывает буфер неизменного фона, если с прошлого кадра изменились силуэт, UI, области притяжения
+	// или вьюпорт (staticVersion), размер окна или область отрисовки. Буфер размером с окно,
+	// с тем же преобразованием, что и основной кадр
+	private void updateStaticLayer(LayoutSnapshot snapshot, float xScale, float yScale) {
+		int width = this.pApplet.width, height = this.pApplet.height;
+
+		if(this.staticLayer != null && this.staticLayerVersion == snapshot.staticVersion
+				&& this.staticLayer.width == width && this.staticLayer.height == height
+				&& this.staticLayerPosX == this.posX && this.staticLayerPosY == this.posY
+				&& this.staticLayerWidth == this.areaWidth && this.staticLayerHeight == this.areaHeight)
+			return;
+
+		if(this.staticLayer == null || this.staticLayer.width != width || this.staticLayer.height != height)
+			this.staticLayer = this.pApplet.createGraphics(width, height);
+
+		this.staticLayerVersion = snapshot.staticVersion;
+		this.staticLayerPosX = this.posX;
+		this.staticLayerPosY = this.posY;
+		this.staticLayerWidth = this.areaWidth;
+		this.staticLayerHeight = this.areaHeight;
+
+		PGraphics g = this.staticLayer;
+
+		g.beginDraw();
+		g.clear();
+		g.translate(this.posX, this.posY);
+		g.scale(xScale, yScale);
+
+		// рисуем силуэт
+
+		g.rectMode(PApplet.CORNERS);
+
+		Silhouette silhouette = snapshot.silhouette;
+
+		float halfPointSize = silhouette.pointSize/2;
+
+		for (int point = 0; point < silhouette.numPoints; point++) {
+			float weight = silhouette.pointWeight[point];
+
+			g.stroke(0xFFFF9933, 100);
+
+			g.fill(g.color(weight*100.0f, weight*150.0f, weight*255.0f));
+			g.rect(silhouette.pointX[point] - halfPointSize, 
+				silhouette.pointY[point] - halfPointSize, 
+				silhouette.pointX[point] + halfPointSize, 
+				silhouette.pointY[point] + halfPointSize);
+		}
+
+		g.strokeWeight(1.0f);
+
+		// рисуем области притяжения
+
+		for(AttractionArea area: snapshot.attractionAreas) {
+			g.noFill();
+			g.stroke(0xFFAAFFAA, 100.0f);
+			g.rect(area.rect.min.x, area.rect.min.y, area.rect.max.x, area.rect.max.y);
+
+			g.noStroke();
+			g.fill(0xFFAAFFAA, 255.0f);
+
+			g.circle(area.attractionPoint.x, area.attractionPoint.y, 15.0f);
+
+			//g.textSize(20);
+		//	g.text(Routines.floatToStringComfortReading(area.weight), area.rect.max.x - 60, area.rect.max.y - 20);
+		}
+
+		// рисуем поле выхода: из каждой точки силуэта отрезок в сторону ближайшей свободной точки
+
+		EscapeField escapeField = snapshot.escapeField;
+
+		if(escapeField != null) {
+			g.stroke(0xFFAAFFAA, 150.0f);
+
+			float arrowLength = escapeField.cellSize*0.4f;
+
+			for(int cell = 0; cell < escapeField.width*escapeField.height; cell++) {
+				float escapeX = escapeField.escapeX[cell], escapeY = escapeField.escapeY[cell];
+
+				float length = (float)Math.sqrt(escapeX*escapeX + escapeY*escapeY);
+
+				if(length == 0.0f)
+					continue;
+
+				float centerX = escapeField.left + (cell%escapeField.width + 0.5f)*escapeField.cellSize;
+				float centerY = escapeField.top + (cell/escapeField.width + 0.5f)*escapeField.cellSize;
+
+				g.line(centerX, centerY, centerX + escapeX/length*arrowLength, centerY + escapeY/length*arrowLength);
+			}
+		}
+
+		// рисуем прямоугольники UI
+
+		for (Rect uiRect : snapshot.uiElements) {
+			g.stroke(0xFFFFFFFF, 255);
+			g.fill(0xFFFFFFFF, 100);
+
+			g.rect(uiRect.min.x, uiRect.min.y, uiRect.max.x, uiRect.max.y);
+		}
+
+		// рисуем вьюпорт
+
+		Rect viewport = snapshot.viewport;
+
+		g.stroke(0xFFFFFFFF, 255);
+		g.noFill();
+
+		g.rect(viewport.min.x, viewport.min.y, viewport.max.x, viewport.max.y);
+
+		g.endDraw();
+	}
+
+	public PVector calcSilhouetteForce(Bubble bubble) {
+		return calcSilhouetteForce(bubble, new PVector());
+	}
+
+	// Варианты calc*Force(bubble, dest) записывают силу в dest и возвращают его. Прямоугольники берутся из рабочих
+	// объектов баббла, так что итерация расчёта не выделяет память
+	PVector calcSilhouetteForce(Bubble bubble, PVector dest) {
+		Rect silColRect = bubble.getMarginRect(MARGIN_SILHOUETTE_COLLISION, bubble.marginRect);
+
+		float silColRectSquare = silColRect.getSquare();
+
+		PVector resultForce = dest.set(0.0f, 0.0f);
+
+		boolean hasSilhouetteIntersection = false;
+		float silCoveredPercentage = 0.0f;
+
+		// прямоугольник самого баббла, для оценки качества
+		float halfDimX = bubble.dim.x*0.5f, halfDimY = bubble.dim.y*0.5f;
+		float bubbleMinX = bubble.pos.x - halfDimX, bubbleMaxX = bubble.pos.x + halfDimX;
+		float bubbleMinY = bubble.pos.y - halfDimY, bubbleMaxY = bubble.pos.y + halfDimY;
+
+		if(this.silhouetteForceMode == SilhouetteForceMode.INTEGRAL) {
+			silCoveredPercentage = (float)this.silhouette.integral.getWeight(silColRect);
+
+			this.packed.silhouetteCoverage[bubble.index] = (float)this.silhouette.integral.getWeight(bubble.getRect(bubble.rect));
+
+			if(silCoveredPercentage > 0.0f) {
+				hasSilhouetteIntersection = true;
+
+				// направление силы - от центра масс перекрытой бабблом части силуэта
+				resultForce.x = bubble.pos.x - (float)this.silhouette.integral.getMomentX(silColRect)/silCoveredPercentage;
+				resultForce.y = bubble.pos.y - (float)this.silhouette.integral.getMomentY(silColRect)/silCoveredPercentage;
+			}
+		}
+		else if(this.silhouetteForceMode == SilhouetteForceMode.REGIONS) {
+			Silhouette sil = this.useSilhouettePyramid ? this.silhouette.getLevel(bubble.silLevel) : this.silhouette;
+
+			SilhouetteRegions regions = sil.getRegions();
+
+			float[] sums = bubble.silhouetteSums;
+			int numCandidates = 0, numHits = 0;
+
+			Arrays.fill(sums, 0.0f);
+
+			// индекс построен по центрам блоков, поэтому запрос расширяется на половину самого большого блока
+			int cellMinX = regions.grid.getCellX(silColRect.min.x - regions.maxHalfWidth);
+			int cellMinY = regions.grid.getCellY(silColRect.min.y - regions.maxHalfHeight);
+			int cellMaxX = regions.grid.getCellX(silColRect.max.x + regions.maxHalfWidth);
+			int cellMaxY = regions.grid.getCellY(silColRect.max.y + regions.maxHalfHeight);
+
+			for(int cy = cellMinY; cy <= cellMaxY; cy++)
+				for(int cx = cellMinX; cx <= cellMaxX; cx++) {
+					int cell = regions.grid.getCellIndex(cx, cy);
+
+					numCandidates += regions.grid.cellStart[cell + 1] - regions.grid.cellStart[cell];
+
+					for(int k = regions.grid.cellStart[cell]; k < regions.grid.cellStart[cell + 1]; k++) {
+						int region = regions.grid.cellItems[k];
+
+						// сила от блока - как от одной точки размером с его перекрытую часть
+						if(accumulateSilhouetteElement(bubble, silColRect, regions.minX[region], regions.minY[region],
+								regions.maxX[region], regions.maxY[region], regions.weight[region], sums))
+							numHits++;
+					}
+				}
+
+			hasSilhouetteIntersection = numHits > 0;
+			silCoveredPercentage = sums[SilhouetteVectorKernel.COVERED];
+
+			resultForce.set(sums[SilhouetteVectorKernel.FORCE_X], sums[SilhouetteVectorKernel.FORCE_Y]);
+
+			this.packed.silhouetteCoverage[bubble.index] = sums[SilhouetteVectorKernel.COVERAGE];
+
+			if(this.metrics != null)
+				this.metrics.silhouettePoints.add(numCandidates, numHits);
+		}
+		else {
+			Silhouette sil = this.useSilhouettePyramid ? this.silhouette.getLevel(bubble.silLevel) : this.silhouette;
+
+			float halfPointSize = sil.pointSize/2;
+
+			float[] sums = bubble.silhouetteSums;
+			int numCandidates = 0, numHits = 0;
+
+			Arrays.fill(sums, 0.0f);
+
+			// обходим только ячейки индекса, которые перекрывает прямоугольник (с учётом размера точки силуэта)
+			int cellMinX = sil.grid.getCellX(silColRect.min.x - halfPointSize);
+			int cellMinY = sil.grid.getCellY(silColRect.min.y - halfPointSize);
+			int cellMaxX = sil.grid.getCellX(silColRect.max.x + halfPointSize);
+			int cellMaxY = sil.grid.getCellY(silColRect.max.y + halfPointSize);
+
+			if(this.useVectorKernel && VECTOR_API_AVAILABLE) {
+				float[] points = sil.getCellOrderedPoints();
+
+				// ячейки одной строки идут в cellItems подряд, поэтому строка обходится одним отрезком точек
+				for(int cy = cellMinY; cy <= cellMaxY; cy++) {
+					int from = sil.grid.cellStart[sil.grid.getCellIndex(cellMinX, cy)];
+					int to = sil.grid.cellStart[sil.grid.getCellIndex(cellMaxX, cy) + 1];
+
+					numCandidates += to - from;
+					numHits += SilhouetteVectorKernel.accumulate(points, sil.numPoints, from, to, halfPointSize, silColRect,
+						bubbleMinX, bubbleMinY, bubbleMaxX, bubbleMaxY, bubble.pos.x, bubble.pos.y, sums);
+				}
+
+			}
+			else {
+				for(int cy = cellMinY; cy <= cellMaxY; cy++)
+					for(int cx = cellMinX; cx <= cellMaxX; cx++) {
+						int cell = sil.grid.getCellIndex(cx, cy);
+
+						numCandidates += sil.grid.cellStart[cell + 1] - sil.grid.cellStart[cell];
+
+						for(int k = sil.grid.cellStart[cell]; k < sil.grid.cellStart[cell + 1]; k++) {
+							int point = sil.grid.cellItems[k];
+
+							if(accumulateSilhouetteElement(bubble, silColRect, sil.pointX[point] - halfPointSize, sil.pointY[point] - halfPointSize,
+									sil.pointX[point] + halfPointSize, sil.pointY[point] + halfPointSize, sil.pointWeight[point], sums))
+								numHits++;
+						}
+					}
+			}
+
+			hasSilhouetteIntersection = numHits > 0;
+			silCoveredPercentage = sums[SilhouetteVectorKernel.COVERED];
+
+			resultForce.set(sums[SilhouetteVectorKernel.FORCE_X], sums[SilhouetteVectorKernel.FORCE_Y]);
+
+			this.packed.silhouetteCoverage[bubble.index] = sums[SilhouetteVectorKernel.COVERAGE];
+
+			if(this.metrics != null)
+				this.metrics.silhouettePoints.add(numCandidates, numHits);
+		}
+
+		if(silCoveredPercentage/silColRectSquare < 0.9f) { // если процент перекрытия силуэта бабблом меньше, то используем градиентную силу, посчитанную в цикле выше
+			resultForce.normalize();
+			resultForce.mult(this.FORCE_FACTOR_SILHOUTTE);
+		} else if(hasSilhouetteIntersection && this.useEscapeField) { // иначе баббл лежит на сплошной области силуэта: двигаем его к ближайшему свободному месту
+			PVector escape = this.silhouette.getEscapeField().getEscape(bubble.pos.x, bubble.pos.y, bubble.escape);
+
+			if(escape.x != 0.0f || escape.y != 0.0f) {
+				resultForce.set(escape);
+
+				resultForce.normalize();
+
+				resultForce.mult(this.FORCE_FACTOR_ATTRACTION_POINT);
+			} else { // центр баббла на свободной точке внутри перекрытой области: направления к выходу нет, остаётся градиентная сила
+				resultForce.normalize();
+				resultForce.mult(this.FORCE_FACTOR_SILHOUTTE);
+			}
+		} else if(hasSilhouetteIntersection){ // иначе, если баббл лежит на сплошной области силуэта, и непонятно куда его двигать, двигаем его к ближайшей точке притяжения
+			for(int i = 0; i < this.attractionAreas.size(); i++) {
+				AttractionArea area = this.attractionAreas.get(i);
+
+				if(area.rect.isPointInside(bubble.pos))
+				{
+					resultForce.set(area.attractionPoint).sub(bubble.pos);
+
+					resultForce.normalize();
+
+					resultForce.mult(this.FORCE_FACTOR_ATTRACTION_POINT);
+
+					break; // предполагается, что баббл может лежать только в одной AttractionArea
+				}
+			}
+		}
+
+		return resultForce;
+	}
+
+	// Добавляет к sums вклад элемента силуэта (квадрата точки или блока) [minX, maxX] x [minY, maxY] с весом weight.
+	// Сила действует только от перекрытой прямоугольником rect части элемента: направлена от её центра к бабблу
+	// и пропорциональна её площади и весу. Индексы sums - как у SilhouetteVectorKernel (там та же арифметика
+	// векторами). Возвращает false, если элемент не перекрыт
+	private static boolean accumulateSilhouetteElement(Bubble bubble, Rect rect, float elementMinX, float elementMinY,
+			float elementMaxX, float elementMaxY, float weight, float[] sums) {
+		// пересечение прямоугольника баббла с элементом
+		float minX = Math.max(rect.min.x, elementMinX);
+		float minY = Math.max(rect.min.y, elementMinY);
+		float maxX = Math.min(rect.max.x, elementMaxX);
+		float maxY = Math.min(rect.max.y, elementMaxY);
+
+		if(minX > maxX || minY > maxY)
+			return false;
+
+		// направление действия силы - между бабблом и центром пересечения
+		float dirX = bubble.pos.x - (minX + maxX)*0.5f;
+		float dirY = bubble.pos.y - (minY + maxY)*0.5f;
+
+		float weightedSquare = (maxX - minX)*(maxY - minY)*weight;
+
+		sums[SilhouetteVectorKernel.COVERED] += weightedSquare;
+
+		// часть перекрытия, приходящаяся на сам баббл
+		float halfDimX = bubble.dim.x*0.5f, halfDimY = bubble.dim.y*0.5f;
+
+		float coveredX = Math.min(maxX, bubble.pos.x + halfDimX) - Math.max(minX, bubble.pos.x - halfDimX);
+		float coveredY = Math.min(maxY, bubble.pos.y + halfDimY) - Math.max(minY, bubble.pos.y - halfDimY);
+
+		if(coveredX > 0.0f && coveredY > 0.0f)
+			sums[SilhouetteVectorKernel.COVERAGE] += coveredX*coveredY*weight;
+
+		float dirLength = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+		if(dirLength > 0.0f) {
+			sums[SilhouetteVectorKernel.FORCE_X] += dirX/dirLength*weightedSquare;
+			sums[SilhouetteVectorKernel.FORCE_Y] += dirY/dirLength*weightedSquare;
+		}
+
+		return true;
+	}
+
+	public PVector calcPinsForce(Bubble bubble) {
+		return calcPinsForce(bubble, new PVector());
+	}
+
+	PVector calcPinsForce(Bubble bubble, PVector dest) {
+		Rect bubbleColRect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION, bubble.marginRect);
+
+		float forceX = 0.0f, forceY = 0.0f;
+		int numCandidates = 0, numHits = 0;
+
+		// наезд на бабла на любой (в том числе свой) пин создает сильную отталкивающую силу.
+		// Такие пины ищем только в ячейках индекса под прямоугольником баббла
+		int cellMinX = this.pinGrid.getCellX(bubbleColRect.min.x);
+		int cellMinY = this.pinGrid.getCellY(bubbleColRect.min.y);
+		int cellMaxX = this.pinGrid.getCellX(bubbleColRect.max.x);
+		int cellMaxY = this.pinGrid.getCellY(bubbleColRect.max.y);
+
+		for(int cy = cellMinY; cy <= cellMaxY; cy++)
+			for(int cx = cellMinX; cx <= cellMaxX; cx++) {
+				int cell = this.pinGrid.getCellIndex(cx, cy);
+
+				numCandidates += this.pinGrid.cellStart[cell + 1] - this.pinGrid.cellStart[cell];
+
+				for(int k = this.pinGrid.cellStart[cell]; k < this.pinGrid.cellStart[cell + 1]; k++) {
+					int pin = this.pinGrid.cellItems[k];
+
+					if(!isPinInside(pin, bubbleColRect))
+						continue;
+
+					numHits++;
+
+					float dirX = bubble.pos.x - this.packed.pinX[pin];
+					float dirY = bubble.pos.y - this.packed.pinY[pin];
+
+					float dirLength = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+					if(dirLength > 0.0f) {
+						forceX += dirX/dirLength*5.0f;
+						forceY += dirY/dirLength*5.0f;
+					}
+				}
+			}
+
+		float leaderLength = 0.0f;
+
+		// притягивающая сила к собственным пинам, на которые баббл не наехал
+		for(int link = this.packed.pinStart[bubble.index]; link < this.packed.pinStart[bubble.index + 1]; link++) {
+			int pin = this.packed.pinIndex[link];
+
+			float dirX = bubble.pos.x - this.packed.pinX[pin];
+			float dirY = bubble.pos.y - this.packed.pinY[pin];
+
+			float dirLength = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+			leaderLength += dirLength; // линия к пину идёт из центра баббла
+
+			if(isPinInside(pin, bubbleColRect))
+				continue;
+
+			if(dirLength > 0.0f) {
+				forceX -= dirX/dirLength;
+				forceY -= dirY/dirLength;
+			}
+		}
+
+		this.packed.leaderLength[bubble.index] = leaderLength;
+
+		if(this.metrics != null)
+			this.metrics.pins.add(numCandidates, numHits);
+
+		PVector resultForce = dest.set(forceX, forceY);
+
+		resultForce.normalize();
+		resultForce.mult(this.FORCE_FACTOR_PINS);
+
+		return resultForce;
+	}
+
+	private boolean isPinInside(int pin, Rect rect) {
+		float pinX = this.packed.pinX[pin];
+		float pinY = this.packed.pinY[pin];
+
+		return pinX >= rect.min.x && pinX <= rect.max.x && pinY >= rect.min.y && pinY <= rect.max.y;
+	}
+
+	public PVector calcBubbleLongRangeForce(Bubble bubble) {
+		return calcBubbleLongRangeForce(bubble, new PVector());
+	}
+
+	PVector calcBubbleLongRangeForce(Bubble bubble, PVector dest) {
+		if(this.longRangeMode == LongRangeMode.BARNES_HUT) {
+			PVector resultForce = dest.set(0.0f, 0.0f);
+
+			// дерево построено в начале итерации, листья читают актуальные положения бабблов
+			this.longRangeTree.addInverseSquareForce(bubble.index, bubble.pos.x, bubble.pos.y, this.barnesHutTheta, resultForce);
+
+			resultForce.mult(2000.0f*this.FORCE_FACTOR_BUBBLE_LONGRANGE);
+
+			return resultForce;
+		}
+
+		float forceX = 0.0f, forceY = 0.0f;
+
+		for (int other = 0; other < this.packed.count; other++) {
+			if(other == bubble.index)
+				continue;
+
+			float deltaX = bubble.pos.x - this.packed.posX[other];
+			float deltaY = bubble.pos.y - this.packed.posY[other];
+
+			float sqrDist = deltaX*deltaX + deltaY*deltaY;
+			float dist =  (float)Math.sqrt(sqrDist);
+			float cubedDist = sqrDist*dist;
+
+			// чтобы было удобно подбирать порядок силы. на данный момент наиболее удачным является 1/sqr(dist)
+			float invDist = dist < 0.001f ? 1.0f : 1.0f/dist;
+			float invSqrDist = sqrDist < 0.001f ? 1.0f : 1.0f/sqrDist;
+			float invCubedDist = cubedDist < 0.001f ? 1.0f : 1.0f/cubedDist;
+
+			if(dist > 0.0f) {
+				forceX += deltaX/dist*invSqrDist*2000.0f; // коэф можно изменить
+				forceY += deltaY/dist*invSqrDist*2000.0f;
+			}
+		}
+
+		PVector resultForce = dest.set(forceX, forceY);
+
+		resultForce.mult(this.FORCE_FACTOR_BUBBLE_LONGRANGE);
+
+		return resultForce;
+	}
+
+	public PVector calcBubbleIntersectionForce(Bubble bubble) {
+		return calcBubbleIntersectionForce(bubble, new PVector());
+	}
+
+	PVector calcBubbleIntersectionForce(Bubble bubble, PVector dest) {
+		Rect bubbleColRect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION, bubble.marginRect);
+
+		float forceX = 0.0f, forceY = 0.0f;
+		int numHits = 0;
+
+		for (int other = 0; other < this.packed.count; other++) {
+			if(other == bubble.index)
+				continue;
+
+			// прямоугольник другого баббла с полями
+			float otherHalfDimX = this.packed.dimX[other]*0.5f;
+			float otherHalfDimY = this.packed.dimY[other]*0.5f;
+
+			float otherMinX = this.packed.posX[other] - otherHalfDimX - MARGIN_BUBBLE_COLLISION;
+			float otherMinY = this.packed.posY[other] - otherHalfDimY - MARGIN_BUBBLE_COLLISION;
+			float otherMaxX = this.packed.posX[other] + otherHalfDimX + MARGIN_BUBBLE_COLLISION;
+			float otherMaxY = this.packed.posY[other] + otherHalfDimY + MARGIN_BUBBLE_COLLISION;
+
+			float minX = Math.max(bubbleColRect.min.x, otherMinX);
+			float minY = Math.max(bubbleColRect.min.y, otherMinY);
+			float maxX = Math.min(bubbleColRect.max.x, otherMaxX);
+			float maxY = Math.min(bubbleColRect.max.y, otherMaxY);
+
+			if(minX > maxX || minY > maxY)
+				continue;
+
+			addBubbleOverlap(bubble.index, maxX - minX, maxY - minY);
+
+			numHits++;
+
+			float centerX = (minX + maxX)*0.5f;
+			float centerY = (minY + maxY)*0.5f;
+
+			setIntersectionCenter(bubble, centerX, centerY);
+
+			float dirX = bubble.pos.x - centerX;
+			float dirY = bubble.pos.y - centerY;
+
+			float dirLength = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+			if(dirLength > 0.0f) {
+				forceX += dirX/dirLength;
+				forceY += dirY/dirLength;
+			}
+		}
+
+		if(this.metrics != null)
+			this.metrics.bubblePairs.add(Math.max(0, this.packed.count - 1), numHits);
+
+		PVector resultForce = dest.set(forceX, forceY);
+
+		resultForce.normalize();
+		resultForce.mult(this.FORCE_FACTOR_BUBBLE_INTERSECTION);
+
+		return resultForce;
+	}
+
+	// считает силы пересечения для всех бабблов сразу по парам из широкой фазы, результат в packed.intersectionForce
+	public void calcBubbleIntersectionForces() {
+		BubbleBuffer b = this.packed;
+
+		this.broadphase.update(b, MARGIN_BUBBLE_COLLISION);
+
+		if(this.metrics != null)
+			this.metrics.bubblePairs.add(this.broadphase.numCandidates, this.broadphase.numPairs);
+
+		Arrays.fill(b.intersectionForceX, 0, b.count, 0.0f);
+		Arrays.fill(b.intersectionForceY, 0, b.count, 0.0f);
+
+		for(int pair = 0; pair < this.broadphase.numPairs; pair++) {
+			int first = this.broadphase.pairA[pair];
+			int second = this.broadphase.pairB[pair];
+
+			// пересечение прямоугольников пары с полями
+			float minX = Math.max(b.posX[first] - b.dimX[first]*0.5f, b.posX[second] - b.dimX[second]*0.5f) - MARGIN_BUBBLE_COLLISION;
+			float minY = Math.max(b.posY[first] - b.dimY[first]*0.5f, b.posY[second] - b.dimY[second]*0.5f) - MARGIN_BUBBLE_COLLISION;
+			float maxX = Math.min(b.posX[first] + b.dimX[first]*0.5f, b.posX[second] + b.dimX[second]*0.5f) + MARGIN_BUBBLE_COLLISION;
+			float maxY = Math.min(b.posY[first] + b.dimY[first]*0.5f, b.posY[second] + b.dimY[second]*0.5f) + MARGIN_BUBBLE_COLLISION;
+
+			// перекрытие учитывается у обоих бабблов, как и при расчёте по одному бабблу
+			addBubbleOverlap(first, maxX - minX, maxY - minY);
+			addBubbleOverlap(second, maxX - minX, maxY - minY);
+
+			float centerX = (minX + maxX)*0.5f;
+			float centerY = (minY + maxY)*0.5f;
+
+			addUnitVector(b.intersectionForceX, b.intersectionForceY, first, b.posX[first] - centerX, b.posY[first] - centerY);
+			addUnitVector(b.intersectionForceX, b.intersectionForceY, second, b.posX[second] - centerX, b.posY[second] - centerY);
+		}
+
+		for(int i = 0; i < b.count; i++) {
+			float length = (float)Math.sqrt(b.intersectionForceX[i]*b.intersectionForceX[i] + b.intersectionForceY[i]*b.intersectionForceY[i]);
+
+			if(length > 0.0f) {
+				b.intersectionForceX[i] *= this.FORCE_FACTOR_BUBBLE_INTERSECTION/length;
+				b.intersectionForceY[i] *= this.FORCE_FACTOR_BUBBLE_INTERSECTION/length;
+			}
+		}
+	}
+
+	// Перекрытие прямоугольников с полями шире перекрытия самих бабблов на два поля по каждой оси
+	private void addBubbleOverlap(int bubble, float marginOverlapX, float marginOverlapY) {
+		float overlapX = marginOverlapX - 2*MARGIN_BUBBLE_COLLISION;
+		float overlapY = marginOverlapY - 2*MARGIN_BUBBLE_COLLISION;
+
+		if(overlapX > 0.0f && overlapY > 0.0f)
+			this.packed.bubbleOverlap[bubble] += overlapX*overlapY;
+	}
+
+	private static void addUnitVector(float[] xs, float[] ys, int i, float dirX, float dirY) {
+		float length = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+		if(length > 0.0f) {
+			xs[i] += dirX/length;
+			ys[i] += dirY/length;
+		}
+	}
+
+	// точка для визуальной отладки, создаётся один раз на баббл
+	private static void setIntersectionCenter(Bubble bubble, float x, float y) {
+		if(bubble.intersectionCenter == null)
+			bubble.intersectionCenter = new PVector();
+
+		bubble.intersectionCenter.set(x, y);
+	}
+
+	public PVector calcUIIntersectionForce(Bubble bubble) {
+		return calcUIIntersectionForce(bubble, new PVector());
+	}
+
+	PVector calcUIIntersectionForce(Bubble bubble, PVector dest) {
+		Rect bubbleColRect = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION, bubble.marginRect);
+
+		float forceX = 0.0f, forceY = 0.0f;
+
+		float halfDimX = bubble.dim.x*0.5f, halfDimY = bubble.dim.y*0.5f;
+		float bubbleMinX = bubble.pos.x - halfDimX, bubbleMaxX = bubble.pos.x + halfDimX;
+		float bubbleMinY = bubble.pos.y - halfDimY, bubbleMaxY = bubble.pos.y + halfDimY;
+
+		// вьюпорт - тоже граница для баббла: часть баббла за его пределами не видна
+		float visibleX = Math.max(0.0f, Math.min(bubbleMaxX, this.viewport.max.x) - Math.max(bubbleMinX, this.viewport.min.x));
+		float visibleY = Math.max(0.0f, Math.min(bubbleMaxY, this.viewport.max.y) - Math.max(bubbleMinY, this.viewport.min.y));
+
+		this.packed.clippedArea[bubble.index] = Math.max(0.0f, bubble.dim.x*bubble.dim.y - visibleX*visibleY);
+
+		int numHits = 0;
+
+		for (int i = 0; i < this.uiElements.size(); i++) {
+			Rect uiRect = this.uiElements.get(i);
+
+			if(!bubbleColRect.intersects(uiRect))
+				continue;
+
+			numHits++;
+
+			float overlapX = Math.min(bubbleMaxX, uiRect.max.x) - Math.max(bubbleMinX, uiRect.min.x);
+			float overlapY = Math.min(bubbleMaxY, uiRect.max.y) - Math.max(bubbleMinY, uiRect.min.y);
+
+			if(overlapX > 0.0f && overlapY > 0.0f)
+				this.packed.uiOverlap[bubble.index] += overlapX*overlapY;
+
+			float centerX = bubbleColRect.getIntersectionCenterX(uiRect);
+			float centerY = bubbleColRect.getIntersectionCenterY(uiRect);
+
+			setIntersectionCenter(bubble, centerX, centerY);
+
+			float dirX = bubble.pos.x - centerX;
+			float dirY = bubble.pos.y - centerY;
+
+			float dirLength = (float)Math.sqrt(dirX*dirX + dirY*dirY);
+
+			if(dirLength > 0.0f) {
+				forceX += dirX/dirLength;
+				forceY += dirY/dirLength;
+			}
+		}
+
+		if(this.metrics != null)
+			this.metrics.uiElements.add(this.uiElements.size(), numHits);
+
+		PVector resultForce = dest.set(forceX, forceY);
+
+		resultForce.normalize();
+		resultForce.mult(this.FORCE_FACTOR_UI_INTERSECTION);
+
+		return resultForce;
+	}
+
+	public void process() 	{ // выполняет одну итерацию
+		if(this.numIterations > this.maxIterations-1) {
+			finishCalculation(StopReason.MAX_ITERATIONS);
+
+			if(this.publishSnapshots)
+				publishSnapshot();
+
+			return;
+		}
+
+		SolveMetrics metrics = this.metrics;
+
+		long startNanos = 0, startAllocatedBytes = 0;
+
+		if(metrics != null) {
+			startNanos = System.nanoTime();
+			startAllocatedBytes = metrics.getAllocatedBytes();
+		}
+
+		prepareIteration();
+
+		// в параллельном режиме силы всех бабблов считаются заранее по состоянию на начало итерации
+		if(this.parallel)
+			calcForcesParallel();
+
+		float kineticEnergy = 0.0f;
+		float maxDisplacement = 0.0f;
+		int numCoarseBubbles = 0;
+		
+		// главный цикл расчёта бабблов
+		for (int i = 0; i < this.bubbles.size(); i++) {
+			Bubble bubble = this.bubbles.get(i);
+
+			if(bubble.frozen) {
+				if(!this.parallel && isEvaluated(bubble))
+					calcTotalForce(bubble, bubble.force); // только ради показателей качества
+
+				continue;
+			}
+
+			float forceX, forceY;
+
+			if(this.parallel) {
+				forceX = this.packed.forceX[bubble.index];
+				forceY = this.packed.forceY[bubble.index];
+			} else {
+				PVector totalForce = calcTotalForce(bubble, bubble.force);
+
+				forceX = totalForce.x;
+				forceY = totalForce.y;
+			}
+
+			float displacement = integrate(bubble, forceX, forceY);
+
+			if(this.useSilhouettePyramid) {
+				updateSilhouetteLevel(bubble, displacement);
+
+				if(bubble.silLevel > 0)
+					numCoarseBubbles++;
+			}
+
+			kineticEnergy += 0.5f*bubble.vel.magSq();
+			maxDisplacement = Math.max(maxDisplacement, displacement);
+
+			// в последовательном режиме следующие бабблы этой итерации видят уже обновлённое положение
+			this.packed.set(bubble.index, bubble.pos, bubble.vel, bubble.dim);
+		}
+
+		boolean untangled = this.untangleLeaders && areAllForcesActive()
+			&& this.numIterations % LEADER_UNTANGLE_INTERVAL == 0 && untangleLeaderLines() > 0;
+
+		this.numIterations++;
+
+		// переставленным бабблам нужно заново прийти в равновесие
+		if(untangled)
+			this.numConvergedIterations = 0;
+
+		// перекрытия без полей, как в LayoutQuality: касание полей не мешает остановке
+		float overlapArea = 0.0f;
+
+		for(int i = 0; i < this.packed.count; i++)
+			overlapArea += this.packed.bubbleOverlap[i]*0.5f + this.packed.uiOverlap[i];
+
+		checkConvergence(kineticEnergy, maxDisplacement, overlapArea, numCoarseBubbles);
+
+		if(metrics != null)
+			metrics.endIteration(startNanos, startAllocatedBytes);
+
+		if(this.publishSnapshots)
+			publishSnapshot();
+	}
+
+	// Готовит общие для всех бабблов данные итерации: упакованное состояние, дерево дальнодействия,
+	// силы пересечения по парам. После вызова можно считать силы отдельных бабблов методами calc*Force
+	public void prepareIteration() {
+		packBubbles();
+
+		// с подключения дальнодействия все бабблы на полном разрешении силуэта (см. SIL_PYRAMID_LEVELS)
+		if(this.useSilhouettePyramid && this.numIterations > this.ITER_START_CALC_BUBBLES_LONGRANGE)
+			for(int i = 0; i < this.bubbles.size(); i++)
+				this.bubbles.get(i).silLevel = 0;
+
+		if(this.longRangeMode == LongRangeMode.BARNES_HUT && this.numIterations > this.ITER_START_CALC_BUBBLES_LONGRANGE)
+			this.longRangeTree.build(this.packed.posX, this.packed.posY, this.packed.count);
+
+		if(this.useSweepAndPrune && this.numIterations > this.ITER_START_CALC_BUBBLES_INTERSECTION) {
+			long start = this.metrics != null ? System.nanoTime() : 0;
+
+			calcBubbleIntersectionForces();
+
+			if(this.metrics != null)
+				this.metrics.bubbleIntersectionForces.record(System.nanoTime() - start);
+		} else if(this.numIterations > this.ITER_START_CALC_BUBBLES_INTERSECTION) {
+			// Неподвижный баббл сил не считает, но его перекрытия с двигающимися соседями меняются.
+			// При sweep-and-prune они уже посчитаны по парам, иначе считаются здесь (сила не используется)
+			for(int i = 0; i < this.bubbles.size(); i++) {
+				Bubble bubble = this.bubbles.get(i);
+
+				if(!isEvaluated(bubble))
+					calcBubbleIntersectionForce(bubble, bubble.partForce);
+			}
+		}
+	}
+
+	public PVector calcTotalForce(Bubble bubble) {
+		return calcTotalForce(bubble, new PVector());
+	}
+
+	// dest не должен быть bubble.partForce: в нём по очереди считаются отдельные силы
+	PVector calcTotalForce(Bubble bubble, PVector dest) {
+		/*
+
+		Силы, действующие на баббл:
+		1. Выталкивающая сила с силуэта. Если непонятно куда выталкивать, подключаются области притяжения
+		2. Отталкивание от элементов UI
+		3. Дальнодействующее отталкивание между бабблами. 
+			Зависит от расстояния, и используется для красивого расположения,
+			добавляет пространство между бабблами, и уменьшает вероятность пересечения линий к пинами
+		4. Непосредственное отталкивание бабблов при столкновении
+		5. Притяжение к собственным пинами баббла, и отталкивание от пинов, на которые баббл наехал
+
+		*/
+
+		SolveMetrics metrics = this.metrics; // без метрик таймер не читается
+
+		PVector totalForce = dest.set(0.0f, 0.0f);
+		PVector partForce = bubble.partForce;
+
+		long start = metrics != null ? System.nanoTime() : 0;
+
+		totalForce.add(calcSilhouetteForce(bubble, partForce));
+
+		if(metrics != null)
+			start = record(metrics.silhouetteForce, start);
+
+		totalForce.add(calcUIIntersectionForce(bubble, partForce));
+
+		if(metrics != null)
+			start = record(metrics.uiIntersectionForce, start);
+
+		if(this.numIterations > this.ITER_START_CALC_BUBBLES_LONGRANGE) {
+			totalForce.add(calcBubbleLongRangeForce(bubble, partForce).mult(getRampFactor(ITER_START_CALC_BUBBLES_LONGRANGE)));
+
+			if(metrics != null)
+				start = record(metrics.bubbleLongRangeForce, start);
+		}
+
+		if(this.numIterations > this.ITER_START_CALC_BUBBLES_INTERSECTION) {
+			float ramp = getRampFactor(ITER_START_CALC_BUBBLES_INTERSECTION);
+
+			if(this.useSweepAndPrune)
+				totalForce.add(this.packed.intersectionForceX[bubble.index]*ramp, this.packed.intersectionForceY[bubble.index]*ramp);
+			else {
+				totalForce.add(calcBubbleIntersectionForce(bubble, partForce).mult(ramp));
+
+				if(metrics != null)
+					start = record(metrics.bubbleIntersectionForce, start);
+			}
+		}
+
+		if(this.numIterations > this.ITER_START_CALC_PINS) {
+			totalForce.add(calcPinsForce(bubble, partForce).mult(getRampFactor(ITER_START_CALC_PINS)));
+
+			if(metrics != null)
+				record(metrics.pinsForce, start);
+		}
+
+		return totalForce;
+	}
+
+	// Множитель силы, подключённой после итерации startIteration: при rampInForces растёт до 1
+	// за FORCE_RAMP_ITERATIONS итераций, иначе всегда 1
+	private float getRampFactor(int startIteration) {
+		if(!this.rampInForces)
+			return 1.0f;
+
+		return Math.min(1.0f, (float)(this.numIterations - startIteration)/FORCE_RAMP_ITERATIONS);
+	}
+
+	// записывает время с момента start, возвращает текущее время для следующего замера
+	private static long record(Histogram histogram, long start) {
+		long now = System.nanoTime();
+
+		histogram.record(now - start);
+
+		return now;
+	}
+
+	// интегрирует движение баббла под действием силы, возвращает смещение баббла за итерацию
+	private float integrate(Bubble bubble, float forceX, float forceY) {
+		float oldPosX = bubble.pos.x;
+		float oldPosY = bubble.pos.y;
+
+		if(this.integrator == Integrator.VERLET)
+			stepVerlet(bubble, forceX, forceY);
+		else if(this.integrator == Integrator.FIRE)
+			stepFire(bubble, forceX, forceY);
+		else {
+			// интегрирование
+			bubble.vel.add(forceX, forceY);
+			bubble.pos.add(bubble.vel);
+
+			// "трение". позволяет быстрее гасить прошедшие возмущения, и уменьшает колебания
+			bubble.vel.mult(0.9f);
+		}
+
+		// граничные условия (вьюпорт).
+
+		PVector viewportCollisionShift = bubble.getMarginRect(MARGIN_BUBBLE_COLLISION, bubble.marginRect).getShiftToFit(viewport, bubble.shift);
+
+		// сдвигаем при врезании в стенку (нулевой вектор, если врезания нет)
+		bubble.pos.add(viewportCollisionShift);
+
+		// тормозим по оси, по которой врезались
+
+		if(Math.abs(viewportCollisionShift.x) > 0.0001)
+			bubble.vel.x = 0.0f;
+
+		if(Math.abs(viewportCollisionShift.y) > 0.0001)
+			bubble.vel.y = 0.0f;
+
+		return PApplet.dist(oldPosX, oldPosY, bubble.pos.x, bubble.pos.y);
+	}
+
+	// Подстраивает шаг баббла по мощности силы P = F·v. Возвращает false, если сила развернулась против скорости
+	private boolean adaptTimeStep(Bubble bubble, float forceX, float forceY) {
+		if(forceX*bubble.vel.x + forceY*bubble.vel.y < 0.0f) {
+			bubble.timeStep = Math.max(bubble.timeStep*TIME_STEP_DECREASE, TIME_STEP_MIN);
+			bubble.numDownhillSteps = 0;
+
+			return false;
+		}
+
+		bubble.numDownhillSteps++;
+
+		if(bubble.numDownhillSteps > FIRE_MIN_STEPS)
+			bubble.timeStep = Math.min(bubble.timeStep*TIME_STEP_INCREASE, TIME_STEP_MAX);
+
+		return true;
+	}
+
+	// Скоростной Верле: скорость доводится средней силой прошлой и текущей итерации, положение сдвигается
+	// на шаг с учётом текущей силы. Трение то же, что у EULER, но пересчитано на длину шага
+	private void stepVerlet(Bubble bubble, float forceX, float forceY) {
+		float prevStep = bubble.timeStep;
+
+		bubble.vel.add((bubble.prevForce.x + forceX)*0.5f*prevStep, (bubble.prevForce.y + forceY)*0.5f*prevStep);
+		bubble.vel.mult((float)Math.pow(0.9f, prevStep));
+
+		adaptTimeStep(bubble, forceX, forceY);
+
+		float step = bubble.timeStep;
+
+		bubble.pos.add(bubble.vel.x*step + forceX*0.5f*step*step, bubble.vel.y*step + forceY*0.5f*step*step);
+		bubble.prevForce.set(forceX, forceY);
+	}
+
+	// FIRE (fast inertial relaxation engine): пока сила не противоречит движению, скорость поворачивается
+	// к направлению силы, а шаг растёт. При развороте силы баббл останавливается, шаг уменьшается.
+	// Колебания вокруг равновесия гасятся остановками, а не трением, поэтому на прямом пути баббл не тормозится
+	private void stepFire(Bubble bubble, float forceX, float forceY) {
+		if(adaptTimeStep(bubble, forceX, forceY)) {
+			float forceLength = (float)Math.sqrt(forceX*forceX + forceY*forceY);
+
+			if(forceLength > 0.0f) {
+				float speed = bubble.vel.mag();
+				float alpha = bubble.fireAlpha;
+
+				bubble.vel.set((1.0f - alpha)*bubble.vel.x + alpha*speed*forceX/forceLength,
+					(1.0f - alpha)*bubble.vel.y + alpha*speed*forceY/forceLength);
+			}
+
+			if(bubble.numDownhillSteps > FIRE_MIN_STEPS)
+				bubble.fireAlpha *= FIRE_ALPHA_DECREASE;
+		} else {
+			bubble.vel.set(0.0f, 0.0f);
+			bubble.fireAlpha = FIRE_ALPHA_START;
+		}
+
+		float step = bubble.timeStep;
+
+		bubble.vel.add(forceX*step, forceY*step);
+		bubble.pos.add(bubble.vel.x*step, bubble.vel.y*step);
+	}
+
+	// Переводит баббл на более подробный уровень пирамиды силуэта, когда он замедлился.
+	// Уровень только уменьшается, так что к проверке сходимости все бабблы на полном разрешении
+	private void updateSilhouetteLevel(Bubble bubble, float displacement) {
+		if(bubble.silLevel == 0)
+			return;
+
+		bubble.silLevelIterations++;
+
+		// Баббл, прижатый к стенке вьюпорта или к соседям, может вообще не сдвигаться, поэтому достаточно
+		// малого смещения, без проверки, что баббл тормозит
+		if(displacement <= SIL_PYRAMID_REFINE_DISPLACEMENT && bubble.silLevelIterations >= SIL_PYRAMID_MIN_LEVEL_ITERATIONS) {
+			bubble.silLevel--;
+			bubble.silLevelIterations = 0;
+		}
+	}
+
+	// Считает силы всех бабблов в пуле потоков. Каждый баббл читает только упакованное состояние
+	// на начало итерации и пишет только в свои ячейки, поэтому результат не зависит от числа потоков и порядка
+	private void calcForcesParallel() {
+		ForkJoinPool pool = FORCE_POOLS.computeIfAbsent(this.parallelism, ForkJoinPool::new);
+
+		pool.invoke(new ForceTask(0, this.bubbles.size()));
+	}
+
+	class ForceTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L; // RecursiveAction сериализуем, задачи не сериализуются
+
+		final int BUBBLES_PER_TASK = 16;
+
+		private final int start, end;
+
+		ForceTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.end - this.start <= BUBBLES_PER_TASK) {
+				for(int i = this.start; i < this.end; i++) {
+					if(!isEvaluated(bubbles.get(i)))
+						continue;
+
+					PVector totalForce = calcTotalForce(bubbles.get(i), bubbles.get(i).force);
+
+					packed.forceX[i] = totalForce.x;
+					packed.forceY[i] = totalForce.y;
+				}
+
+				return;
+			}
+
+			int middle = (this.start + this.end) >>> 1;
+
+			invokeAll(new ForceTask(this.start, middle), new ForceTask(middle, this.end));
+		}
+	}
+
+	// итерация, с которой подключена последняя из дополнительных сил (при rampInForces - с которой она полная)
+	private int getLastStageIteration() {
+		int last = Math.max(ITER_START_CALC_BUBBLES_INTERSECTION, Math.max(ITER_START_CALC_BUBBLES_LONGRANGE, ITER_START_CALC_PINS));
+
+		return this.rampInForces ? last + FORCE_RAMP_ITERATIONS - 1 : last;
+	}
+
+	// true, когда подключены все силы, и показатели итерации (в том числе overlapArea) полные
+	boolean areAllForcesActive() {
+		return this.numIterations > getLastStageIteration() + 1;
+	}
+
+	private void checkConvergence(float kineticEnergy, float maxDisplacement, float overlapArea, int numCoarseBubbles) {
+		this.kineticEnergy = kineticEnergy;
+		this.maxDisplacement = maxDisplacement;
+		this.overlapArea = overlapArea;
+
+		// пока подключаются новые силы, бабблы могут стоять, но решение ещё не получено
+		if(!areAllForcesActive())
+			return;
+
+		// энергия падает после всплеска от подключения последних сил
+		this.peakKineticEnergy = Math.max(this.peakKineticEnergy, kineticEnergy);
+
+		// решение принимается только на полном разрешении силуэта
+		if(numCoarseBubbles > 0) {
+			this.numConvergedIterations = 0;
+			return;
+		}
+
+		if(this.goodEnoughScore >= 0.0f && getQuality().getScore() <= this.goodEnoughScore) {
+			finishCalculation(StopReason.GOOD_ENOUGH);
+			return;
+		}
+
+		boolean settled = kineticEnergy <= CONVERGENCE_RELATIVE_ENERGY*this.peakKineticEnergy;
+
+		// перекрытия считаются неустранимыми, если за итерацию они почти не уменьшились
+		boolean overlapResolved = overlapArea < CONVERGENCE_OVERLAP_AREA;
+		boolean overlapStuck = this.lastOverlapArea - overlapArea < CONVERGENCE_OVERLAP_AREA;
+
+		this.lastOverlapArea = overlapArea;
+
+		if(settled && (overlapResolved || overlapStuck))
+			this.numConvergedIterations++;
+		else
+			this.numConvergedIterations = 0;
+
+		if(this.numConvergedIterations >= CONVERGENCE_ITERATIONS)
+			finishCalculation(overlapResolved ? StopReason.CONVERGED : StopReason.STALLED);
+	}
+
+	// Меняет местами бабблы с пересекающимися линиями к пинам, если это сокращает их суммарную длину линий
+	// (для двух пересекающихся линий с одним пином перестановка всегда убирает пересечение и сокращает длину).
+	// За проход баббл переставляется не больше одного раза. Возвращает число перестановок
+	private int untangleLeaderLines() {
+		LeaderCrossings crossings = this.leaderCrossings;
+
+		crossings.find(this.packed);
+
+		if(crossings.numCrossings == 0)
+			return 0;
+
+		boolean[] moved = new boolean[this.bubbles.size()];
+
+		int numSwaps = 0;
+
+		for(int k = 0; k < crossings.numCrossings; k++) {
+			int a = crossings.segmentBubble[crossings.crossingA[k]];
+			int b = crossings.segmentBubble[crossings.crossingB[k]];
+
+			if(moved[a] || moved[b])
+				continue;
+
+			Bubble first = this.bubbles.get(a), second = this.bubbles.get(b);
+
+			if(first.frozen || second.frozen)
+				continue;
+
+			float lengthBefore = getLeaderLength(first, first.pos) + getLeaderLength(second, second.pos);
+			float lengthAfter = getLeaderLength(first, second.pos) + getLeaderLength(second, first.pos);
+
+			if(lengthAfter >= lengthBefore)
+				continue;
+
+			PVector pos = first.pos.copy();
+
+			first.pos.set(second.pos);
+			second.pos.set(pos);
+
+			// набранная скорость относилась к старому месту
+			first.vel.set(0.0f, 0.0f);
+			second.vel.set(0.0f, 0.0f);
+			first.resetIntegrator();
+			second.resetIntegrator();
+
+			this.packed.set(a, first.pos, first.vel, first.dim);
+			this.packed.set(b, second.pos, second.vel, second.dim);
+
+			moved[a] = moved[b] = true;
+			numSwaps++;
+		}
+
+		return numSwaps;
+	}
+
+	private static float getLeaderLength(Bubble bubble, PVector pos) {
+		float length = 0.0f;
+
+		for(Pin pin : bubble.pins)
+			length += PVector.dist(pos, pin.pos);
+
+		return length;
+	}
+
+	private void finishCalculation(StopReason reason) {
+		this.calculationDone = true;
+		this.stopReason = reason;
+
+		// инкрементальный пересчёт закончен, следующий расчёт двигает все бабблы
+		this.relayoutIteration = -1;
+
+		for(Bubble bubble : this.bubbles)
+			bubble.frozen = false;
+	}
+
+	// переносит состояние бабблов и пинов в упакованные массивы, вызывается в начале каждой итерации
+	public void packBubbles() {
+		int numPinLinks = 0;
+
+		// индексные циклы вместо for-each: итераторы списков - единственное, что выделялось бы на каждой итерации
+		for (int i = 0; i < this.bubbles.size(); i++)
+			numPinLinks += this.bubbles.get(i).pins.size();
+
+		this.packed.resize(this.bubbles.size(), this.pins.size(), numPinLinks);
+
+		for (int i = 0; i < this.pins.size(); i++) {
+			Pin pin = this.pins.get(i);
+
+			pin.index = i;
+
+			this.packed.pinX[i] = pin.pos.x;
+			this.packed.pinY[i] = pin.pos.y;
+		}
+
+		int link = 0;
+
+		for (int i = 0; i < this.bubbles.size(); i++) {
+			Bubble bubble = this.bubbles.get(i);
+
+			bubble.index = i;
+
+			this.packed.set(i, bubble.pos, bubble.vel, bubble.dim);
+
+			this.packed.pinStart[i] = link;
+
+			for (int pin = 0; pin < bubble.pins.size(); pin++)
+				this.packed.pinIndex[link++] = bubble.pins.get(pin).index;
+		}
+
+		this.packed.pinStart[this.bubbles.size()] = link;
+
+		// Показатели неподвижных бабблов сохраняются с итерации, на которой они считались. Кроме перекрытий
+		// с другими бабблами: соседи двигаются, поэтому перекрытия считаются заново (см. prepareIteration())
+		for (int i = 0; i < this.bubbles.size(); i++)
+			if(isEvaluated(this.bubbles.get(i)))
+				this.packed.clearAccumulators(i);
+			else
+				this.packed.clearBubbleOverlap(i);
+
+		if(this.pinsChanged) {
+			this.pinGrid = new SpatialGrid(this.packed.pinX, this.packed.pinY, this.packed.numPins, PIN_GRID_CELL_SIZE);
+			this.pinsChanged = false;
+		}
+	}
+
+	// полный расчёт без привязки к кадрам отрисовки: итерации выполняются подряд до завершения
+	public ArrayList<Rect> solve() {
+		while(!this.calculationDone)
+			process();
+
+		return getBubbleRects();
+	}
+
+	// снимает текущее состояние и публикует его для отрисовки. Вызывается в потоке расчёта
+	public LayoutSnapshot publishSnapshot() {
+		LayoutSnapshot snapshot = createSnapshot();
+
+		this.snapshot.set(snapshot);
+
+		return snapshot;
+	}
+
+	// последний опубликованный снимок или null, если публикаций не было. Можно вызывать из любого потока
+	public LayoutSnapshot getSnapshot() {
+		return this.snapshot.get();
+	}
+
+	private LayoutSnapshot createSnapshot() {
+		return new LayoutSnapshot(this.bubbles, this.pins, this.uiElements, this.viewport,
+			this.silhouette, this.attractionAreas, this.useEscapeField && this.silhouette != null ? this.silhouette.getEscapeField() : null, this.staticVersion, this.numIterations, this.calculationDone, this.stopReason);
+	}
+
+	public Silhouette getSilhouette() {
+		return this.silhouette;
+	}
+
+	public List<Bubble> getBubbles() {
+		return Collections.unmodifiableList(this.bubbles);
+	}
+
+	public ArrayList<Rect> getBubbleRects() {
+		ArrayList<Rect> rects = new ArrayList<Rect>();
+
+		for(Bubble bubble : this.bubbles)
+			rects.add(bubble.getRect());
+
+		return rects;
+	}
+}
\ No newline at end of file
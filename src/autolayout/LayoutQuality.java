@@ -0,0 +1,46 @@
+package autolayout;
+
+// Оценка качества раскладки. Показатели накапливаются по бабблам прямо в расчёте сил
+// (силуэт, пересечения бабблов и UI, пины), поэтому получить оценку после итерации можно за O(n)
+// без повторного обхода. Значения относятся к положениям бабблов на начало последней итерации.
+// Показатель учитывается, только когда подключена соответствующая сила, поэтому оценки
+// сравнимы между собой лишь при complete == true (подключены все силы).
+public class LayoutQuality {
+	// веса показателей в общей оценке. Площади в пикселях^2 складываются как есть,
+	// длина выносной линии переводится в площадь, пересечение линий штрафуется как перекрытие 50x50
+	public static final float 	LEADER_LENGTH_WEIGHT 	= 10.0f;
+	public static final float 	LEADER_CROSSING_PENALTY = 2500.0f;
+
+	public final float 		silhouetteCoverage; // вес силуэта под бабблами (вес * площадь)
+	public final float 		bubbleOverlapArea; // площадь попарных перекрытий бабблов (без полей)
+	public final float 		uiOverlapArea; // площадь перекрытия бабблов с элементами UI
+	public final float 		leaderLength; // суммарная длина линий от бабблов к пинам
+	public final int 		leaderCrossings; // число пересечений линий, -1 если не считалось
+	public final float 		clippedArea; // площадь бабблов за пределами вьюпорта
+
+	public final boolean 	complete;
+
+	public LayoutQuality(float silhouetteCoverage, float bubbleOverlapArea, float uiOverlapArea,
+			float leaderLength, int leaderCrossings, float clippedArea, boolean complete) {
+		this.silhouetteCoverage = silhouetteCoverage;
+		this.bubbleOverlapArea = bubbleOverlapArea;
+		this.uiOverlapArea = uiOverlapArea;
+		this.leaderLength = leaderLength;
+		this.leaderCrossings = leaderCrossings;
+		this.clippedArea = clippedArea;
+		this.complete = complete;
+	}
+
+	// общая оценка, меньше - лучше. Не посчитанные пересечения линий не штрафуются
+	public float getScore() {
+		return this.silhouetteCoverage + this.bubbleOverlapArea + this.uiOverlapArea + this.clippedArea
+			+ this.leaderLength*LEADER_LENGTH_WEIGHT + Math.max(0, this.leaderCrossings)*LEADER_CROSSING_PENALTY;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("score %.0f: silhouette %.0f, bubble overlap %.0f, UI overlap %.0f, leaders %.0f (%d crossings), clipped %.0f%s",
+			getScore(), this.silhouetteCoverage, this.bubbleOverlapArea, this.uiOverlapArea,
+			this.leaderLength, this.leaderCrossings, this.clippedArea, this.complete ? "" : " (incomplete)");
+	}
+}
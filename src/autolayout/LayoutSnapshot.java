@@ -0,0 +1,168 @@
+package autolayout;
+
+import java.util.*;
+
+// Неизменяемый снимок раскладки для отрисовки: прямоугольники бабблов, линии к пинам, пины,
+// элементы UI и состояние расчёта на конец итерации. Публикуется LayoutManager через AtomicReference,
+// поэтому поток отрисовки читает его без блокировок, пока поток расчёта продолжает итерации.
+// Данные лежат в массивах, снимок не ссылается на изменяемые объекты расчёта
+public final class LayoutSnapshot {
+	public final int 			numBubbles;
+	private final float[] 		minX, minY, maxX, maxY;
+
+	// пины бабблов: линии баббла i идут к точкам linkX/linkY с pinStart[i] по pinStart[i + 1] - 1
+	private final int[] 		pinStart;
+	private final float[] 		linkX, linkY;
+
+	public final int 			numPins;
+	private final float[] 		pinX, pinY;
+
+	// читаются отрисовкой напрямую, наружу отдаются копиями
+	final List<Rect> 			uiElements;
+	final Rect 					viewport;
+
+	// силуэт не меняется после построения (init() заменяет его новым)
+	public final Silhouette 	silhouette;
+
+	// области притяжения не меняются после построения, снимок хранит ссылку на готовый список
+	final List<LayoutManager.AttractionArea> attractionAreas;
+
+	// поле выхода силуэта, если оно используется вместо областей притяжения, иначе null. Не меняется после построения
+	final EscapeField 			escapeField;
+
+	// версия силуэта, UI, областей притяжения и вьюпорта: пока она не меняется, их можно не перерисовывать
+	final int 					staticVersion;
+
+	public final int 			numIterations;
+	public final boolean 		calculationDone;
+	public final LayoutManager.StopReason stopReason;
+
+	LayoutSnapshot(List<LayoutManager.Bubble> bubbles, List<LayoutManager.Pin> pins, List<Rect> uiElements, Rect viewport,
+			Silhouette silhouette, List<LayoutManager.AttractionArea> attractionAreas, EscapeField escapeField, int staticVersion, int numIterations, boolean calculationDone, LayoutManager.StopReason stopReason) {
+		this.numBubbles = bubbles.size();
+
+		this.minX = new float[this.numBubbles];
+		this.minY = new float[this.numBubbles];
+		this.maxX = new float[this.numBubbles];
+		this.maxY = new float[this.numBubbles];
+
+		this.pinStart = new int[this.numBubbles + 1];
+
+		int numLinks = 0;
+
+		for(LayoutManager.Bubble bubble : bubbles)
+			numLinks += bubble.pins.size();
+
+		this.linkX = new float[numLinks];
+		this.linkY = new float[numLinks];
+
+		int link = 0;
+
+		for(int i = 0; i < this.numBubbles; i++) {
+			LayoutManager.Bubble bubble = bubbles.get(i);
+
+			float halfWidth = bubble.dim.x*0.5f, halfHeight = bubble.dim.y*0.5f;
+
+			this.minX[i] = bubble.pos.x - halfWidth;
+			this.minY[i] = bubble.pos.y - halfHeight;
+			this.maxX[i] = bubble.pos.x + halfWidth;
+			this.maxY[i] = bubble.pos.y + halfHeight;
+
+			this.pinStart[i] = link;
+
+			for(LayoutManager.Pin pin : bubble.pins) {
+				this.linkX[link] = pin.pos.x;
+				this.linkY[link] = pin.pos.y;
+				link++;
+			}
+		}
+
+		this.pinStart[this.numBubbles] = link;
+
+		this.numPins = pins.size();
+
+		this.pinX = new float[this.numPins];
+		this.pinY = new float[this.numPins];
+
+		for(int i = 0; i < this.numPins; i++) {
+			this.pinX[i] = pins.get(i).pos.x;
+			this.pinY[i] = pins.get(i).pos.y;
+		}
+
+		List<Rect> uiCopy = new ArrayList<Rect>();
+
+		for(Rect rect : uiElements)
+			uiCopy.add(copyRect(rect));
+
+		this.uiElements = Collections.unmodifiableList(uiCopy);
+		this.viewport = copyRect(viewport);
+		this.silhouette = silhouette;
+		this.attractionAreas = attractionAreas;
+		this.escapeField = escapeField;
+		this.staticVersion = staticVersion;
+
+		this.numIterations = numIterations;
+		this.calculationDone = calculationDone;
+		this.stopReason = stopReason;
+	}
+
+	private static Rect copyRect(Rect rect) {
+		return new Rect(rect.min.x, rect.min.y, rect.max.x, rect.max.y);
+	}
+
+	// Rect и координаты отдаются копиями, чтобы снимок нельзя было изменить снаружи
+
+	public Rect getBubbleRect(int bubble) {
+		return new Rect(this.minX[bubble], this.minY[bubble], this.maxX[bubble], this.maxY[bubble]);
+	}
+
+	public float getBubbleCenterX(int bubble) {
+		return (this.minX[bubble] + this.maxX[bubble])*0.5f;
+	}
+
+	public float getBubbleCenterY(int bubble) {
+		return (this.minY[bubble] + this.maxY[bubble])*0.5f;
+	}
+
+	public int getNumLinks(int bubble) {
+		return this.pinStart[bubble + 1] - this.pinStart[bubble];
+	}
+
+	public float getLinkX(int bubble, int link) {
+		return this.linkX[this.pinStart[bubble] + link];
+	}
+
+	public float getLinkY(int bubble, int link) {
+		return this.linkY[this.pinStart[bubble] + link];
+	}
+
+	public float getPinX(int pin) {
+		return this.pinX[pin];
+	}
+
+	public float getPinY(int pin) {
+		return this.pinY[pin];
+	}
+
+	public Rect getViewport() {
+		return copyRect(this.viewport);
+	}
+
+	public List<Rect> getUIElements() {
+		List<Rect> rects = new ArrayList<Rect>();
+
+		for(Rect rect : this.uiElements)
+			rects.add(copyRect(rect));
+
+		return rects;
+	}
+
+	public ArrayList<Rect> getBubbleRects() {
+		ArrayList<Rect> rects = new ArrayList<Rect>();
+
+		for(int i = 0; i < this.numBubbles; i++)
+			rects.add(getBubbleRect(i));
+
+		return rects;
+	}
+}
@@ -0,0 +1,477 @@
+package autolayout;
+
+import java.util.*;
+
+// Поиск пересечений линий от центров бабблов к пинам заметающей прямой (Bentley-Ottmann)
+// за O((n + k) log n), где n - число линий, k - число пересечений.
+// Прямая идёт по x, линии, которые она пересекает, упорядочены по y в декартовом дереве (статус).
+// Проверяются только соседние в статусе линии: при добавлении и удалении линии и в точке пересечения,
+// где две соседние линии меняются местами. Найденные пересечения справа от прямой ставятся в очередь событий.
+// Порядок в статусе меняется только явными перестановками, поэтому ошибки округления
+// не портят дерево. Пересечения считаются как в LayoutManager.areSegmentsCrossing: касания
+// и наложения не учитываются, линии одного баббла не проверяются.
+public class LeaderCrossings {
+	// Линии переводятся сдвигом x' = x + SKEW*y: сдвиг сохраняет пересечения, а вертикальных
+	// линий (с которыми заметающая прямая совпадает) после него практически не остаётся
+	static final double SKEW = 0.000613;
+
+	// линия i - связь баббла с пином номер i в BubbleBuffer.pinIndex
+	public int 		numSegments;
+	public int[] 	segmentBubble = new int[0];
+
+	public int 		numCrossings;
+	public int[] 	crossingA = new int[0], crossingB = new int[0]; // номера пересекающихся линий
+
+	// концы линий в сдвинутых координатах, x1 <= x2. Линии нулевой длины не участвуют
+	private double[] x1 = new double[0], y1 = new double[0], x2 = new double[0], y2 = new double[0];
+	private double[] slope = new double[0];
+
+	// исходные концы (центр баббла и пин): пересечение проверяется по ним, как в LayoutManager
+	private float[] fromX = new float[0], fromY = new float[0], toX = new float[0], toY = new float[0];
+
+	// события концов линий: ключ - x в старших битах, номер события (2*линия + конец) в младших
+	private long[] 	endpointKeys = new long[0];
+	private int 	numEndpoints;
+
+	// очередь событий пересечения - двоичная куча по (x, y)
+	private double[] heapX = new double[0], heapY = new double[0];
+	private int[] 	heapA = new int[0], heapB = new int[0];
+	private int 	heapSize;
+
+	// пары, пересечение которых уже учтено, и пары с событием перестановки в очереди
+	private final HashSet<Long> counted = new HashSet<Long>();
+	private final HashSet<Long> scheduled = new HashSet<Long>();
+
+	// статус: декартово дерево с указателями на родителей и двусвязный список соседей по y.
+	// Узел i создаётся для линии i, при пересечении линии меняются узлами
+	private int[] 	left = new int[0], right = new int[0], parent = new int[0], priority = new int[0];
+	private int[] 	prev = new int[0], next = new int[0];
+	private int[] 	nodeSegment = new int[0], segmentNode = new int[0];
+	private int 	root;
+
+	private double 	sweepX;
+
+	public void find(BubbleBuffer packed) {
+		int n = packed.pinStart[packed.count];
+
+		resize(n);
+
+		this.numSegments = n;
+		this.numCrossings = 0;
+		this.numEndpoints = 0;
+		this.heapSize = 0;
+		this.root = -1;
+		this.sweepX = Double.NEGATIVE_INFINITY;
+		this.counted.clear();
+		this.scheduled.clear();
+
+		for(int bubble = 0; bubble < packed.count; bubble++)
+			for(int link = packed.pinStart[bubble]; link < packed.pinStart[bubble + 1]; link++) {
+				int pin = packed.pinIndex[link];
+
+				this.segmentBubble[link] = bubble;
+
+				setSegment(link, packed.posX[bubble], packed.posY[bubble], packed.pinX[pin], packed.pinY[pin]);
+			}
+
+		Arrays.sort(this.endpointKeys, 0, this.numEndpoints);
+
+		int endpoint = 0;
+
+		while(endpoint < this.numEndpoints || this.heapSize > 0) {
+			// пересечения обрабатываются раньше концов линий с тем же x
+			if(this.heapSize > 0 && (endpoint == this.numEndpoints || this.heapX[0] <= getEndpointX(endpoint))) {
+				this.sweepX = Math.max(this.sweepX, this.heapX[0]);
+
+				int a = this.heapA[0], b = this.heapB[0];
+
+				popCrossing();
+
+				handleCrossing(a, b);
+			} else {
+				int event = (int)this.endpointKeys[endpoint++];
+				int segment = event >> 1;
+
+				if((event & 1) == 0) {
+					this.sweepX = Math.max(this.sweepX, this.x1[segment]);
+
+					insert(segment);
+				} else {
+					this.sweepX = Math.max(this.sweepX, this.x2[segment]);
+
+					remove(segment);
+				}
+			}
+		}
+	}
+
+	private void resize(int n) {
+		if(this.x1.length >= n)
+			return;
+
+		this.segmentBubble = new int[n];
+		this.x1 = new double[n];
+		this.y1 = new double[n];
+		this.x2 = new double[n];
+		this.y2 = new double[n];
+		this.slope = new double[n];
+		this.fromX = new float[n];
+		this.fromY = new float[n];
+		this.toX = new float[n];
+		this.toY = new float[n];
+		this.endpointKeys = new long[2*n];
+
+		this.left = new int[n];
+		this.right = new int[n];
+		this.parent = new int[n];
+		this.priority = new int[n];
+		this.prev = new int[n];
+		this.next = new int[n];
+		this.nodeSegment = new int[n];
+		this.segmentNode = new int[n];
+
+		for(int i = 0; i < n; i++)
+			this.priority[i] = i*0x9E3779B9; // псевдослучайные, но повторяемые приоритеты
+	}
+
+	private void setSegment(int segment, float ax, float ay, float bx, float by) {
+		this.fromX[segment] = ax;
+		this.fromY[segment] = ay;
+		this.toX[segment] = bx;
+		this.toY[segment] = by;
+
+		double sx = ax + SKEW*ay, sy = ay;
+		double ex = bx + SKEW*by, ey = by;
+
+		if(sx == ex && sy == ey)
+			return; // баббл стоит на пине
+
+		if(ex < sx || (ex == sx && ey < sy)) {
+			double t = sx; sx = ex; ex = t;
+			t = sy; sy = ey; ey = t;
+		}
+
+		this.x1[segment] = sx;
+		this.y1[segment] = sy;
+		this.x2[segment] = ex;
+		this.y2[segment] = ey;
+		this.slope[segment] = ex > sx ? (ey - sy)/(ex - sx) : Double.POSITIVE_INFINITY;
+
+		this.endpointKeys[this.numEndpoints++] = getSortKey(sx, 2*segment);
+		this.endpointKeys[this.numEndpoints++] = getSortKey(ex, 2*segment + 1);
+	}
+
+	// ключ сортировки событий: монотонное целочисленное представление x (как в SweepAndPrune) и номер события
+	private static long getSortKey(double x, int event) {
+		int bits = Float.floatToIntBits((float)x);
+
+		bits ^= (bits >> 31) & 0x7FFFFFFF;
+
+		return ((long)bits << 32) | event;
+	}
+
+	private double getEndpointX(int endpoint) {
+		int event = (int)this.endpointKeys[endpoint];
+
+		return (event & 1) == 0 ? this.x1[event >> 1] : this.x2[event >> 1];
+	}
+
+	private double getY(int segment) {
+		if(this.slope[segment] == Double.POSITIVE_INFINITY)
+			return this.y1[segment];
+
+		double x = Math.min(Math.max(this.sweepX, this.x1[segment]), this.x2[segment]);
+
+		return this.y1[segment] + this.slope[segment]*(x - this.x1[segment]);
+	}
+
+	// порядок линий на заметающей прямой; в общей точке ниже та, что дальше идёт ниже
+	private int compare(int a, int b) {
+		int result = Double.compare(getY(a), getY(b));
+
+		if(result == 0)
+			result = Double.compare(this.slope[a], this.slope[b]);
+
+		return result != 0 ? result : Integer.compare(a, b);
+	}
+
+	private void insert(int segment) {
+		int node = segment;
+
+		this.segmentNode[segment] = node;
+		this.nodeSegment[node] = segment;
+
+		int parentNode = -1, current = this.root, below = -1, above = -1;
+		boolean isLeft = false;
+
+		while(current != -1) {
+			parentNode = current;
+			isLeft = compare(segment, this.nodeSegment[current]) < 0;
+
+			if(isLeft) {
+				above = current;
+				current = this.left[current];
+			} else {
+				below = current;
+				current = this.right[current];
+			}
+		}
+
+		this.left[node] = this.right[node] = -1;
+		this.parent[node] = parentNode;
+
+		if(parentNode == -1)
+			this.root = node;
+		else if(isLeft)
+			this.left[parentNode] = node;
+		else
+			this.right[parentNode] = node;
+
+		this.prev[node] = below;
+		this.next[node] = above;
+
+		if(below != -1)
+			this.next[below] = node;
+
+		if(above != -1)
+			this.prev[above] = node;
+
+		while(this.parent[node] != -1 && this.priority[node] > this.priority[this.parent[node]])
+			rotateUp(node);
+
+		if(below != -1)
+			checkCrossing(this.nodeSegment[below], segment);
+
+		if(above != -1)
+			checkCrossing(segment, this.nodeSegment[above]);
+	}
+
+	private void remove(int segment) {
+		int node = this.segmentNode[segment];
+
+		// опускаем узел до листа поворотами, поднимая ребёнка с большим приоритетом
+		while(this.left[node] != -1 || this.right[node] != -1) {
+			int child;
+
+			if(this.left[node] == -1)
+				child = this.right[node];
+			else if(this.right[node] == -1)
+				child = this.left[node];
+			else
+				child = this.priority[this.left[node]] > this.priority[this.right[node]] ? this.left[node] : this.right[node];
+
+			rotateUp(child);
+		}
+
+		int parentNode = this.parent[node];
+
+		if(parentNode == -1)
+			this.root = -1;
+		else if(this.left[parentNode] == node)
+			this.left[parentNode] = -1;
+		else
+			this.right[parentNode] = -1;
+
+		int below = this.prev[node], above = this.next[node];
+
+		if(below != -1)
+			this.next[below] = above;
+
+		if(above != -1)
+			this.prev[above] = below;
+
+		if(below != -1 && above != -1)
+			checkCrossing(this.nodeSegment[below], this.nodeSegment[above]);
+	}
+
+	private void rotateUp(int node) {
+		int parentNode = this.parent[node], grandParent = this.parent[parentNode];
+
+		if(this.left[parentNode] == node) {
+			this.left[parentNode] = this.right[node];
+
+			if(this.right[node] != -1)
+				this.parent[this.right[node]] = parentNode;
+
+			this.right[node] = parentNode;
+		} else {
+			this.right[parentNode] = this.left[node];
+
+			if(this.left[node] != -1)
+				this.parent[this.left[node]] = parentNode;
+
+			this.left[node] = parentNode;
+		}
+
+		this.parent[parentNode] = node;
+		this.parent[node] = grandParent;
+
+		if(grandParent == -1)
+			this.root = node;
+		else if(this.left[grandParent] == parentNode)
+			this.left[grandParent] = node;
+		else
+			this.right[grandParent] = node;
+	}
+
+	// соседние линии в точке пересечения меняются местами, у каждой появляется новый сосед
+	private void handleCrossing(int a, int b) {
+		int nodeA = this.segmentNode[a], nodeB = this.segmentNode[b];
+
+		int lower, upper;
+
+		if(this.next[nodeA] == nodeB) {
+			lower = nodeA;
+			upper = nodeB;
+		} else if(this.next[nodeB] == nodeA) {
+			lower = nodeB;
+			upper = nodeA;
+		} else {
+			// между линиями оказалась третья (несколько пересечений в одной точке, события пришли
+			// не по порядку из-за округления). Пара проверится снова, когда опять станет соседней
+			this.scheduled.remove(getPairKey(a, b));
+			return;
+		}
+
+		int lowerSegment = this.nodeSegment[lower], upperSegment = this.nodeSegment[upper];
+
+		this.nodeSegment[lower] = upperSegment;
+		this.nodeSegment[upper] = lowerSegment;
+		this.segmentNode[upperSegment] = lower;
+		this.segmentNode[lowerSegment] = upper;
+
+		if(this.prev[lower] != -1)
+			checkCrossing(this.nodeSegment[this.prev[lower]], upperSegment);
+
+		if(this.next[upper] != -1)
+			checkCrossing(lowerSegment, this.nodeSegment[this.next[upper]]);
+	}
+
+	// Проверка соседних линий: below ниже above на заметающей прямой.
+	// Местами в статусе линии меняются, когда below идёт круче above и догоняет её раньше, чем одна из них
+	// закончится. Учитывается пересечение по исходным координатам, как в LayoutManager. Обычно это одно
+	// и то же, но касание (конец одной линии на другой) после сдвига и округления может выглядеть
+	// пересечением и наоборот. Порядок в статусе при этом всё равно должен соответствовать наклонам
+	private void checkCrossing(int below, int above) {
+		double crossX = Double.NaN;
+
+		if(this.slope[below] > this.slope[above]) {
+			double gap = getY(above) - getY(below);
+
+			crossX = this.sweepX;
+
+			if(gap > 0 && this.slope[below] != Double.POSITIVE_INFINITY)
+				crossX += gap/(this.slope[below] - this.slope[above]);
+
+			if(crossX > Math.min(this.x2[below], this.x2[above]))
+				crossX = Double.NaN; // одна из линий закончится раньше
+		}
+
+		boolean isSwapped = !Double.isNaN(crossX);
+
+		// линии одного баббла не учитываются, но их порядок в статусе тоже поддерживается
+		boolean isCrossing = this.segmentBubble[below] != this.segmentBubble[above] && LayoutManager.areSegmentsCrossing(this.fromX[below], this.fromY[below], this.toX[below], this.toY[below],
+			this.fromX[above], this.fromY[above], this.toX[above], this.toY[above]);
+
+		// пара могла уже стать соседней раньше и разойтись, пересечение учитывается один раз
+		long key = getPairKey(below, above);
+
+		if(isCrossing && this.counted.add(key))
+			addCrossing(below, above);
+
+		if(isSwapped && this.scheduled.add(key)) {
+			double x = this.sweepX;
+
+			this.sweepX = crossX;
+
+			double crossY = getY(above);
+
+			this.sweepX = x;
+
+			pushCrossing(crossX, crossY, below, above);
+		}
+	}
+
+	private static long getPairKey(int a, int b) {
+		return a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+	}
+
+	private void addCrossing(int a, int b) {
+		if(this.numCrossings == this.crossingA.length) {
+			int capacity = Math.max(16, this.numCrossings*2);
+
+			this.crossingA = Arrays.copyOf(this.crossingA, capacity);
+			this.crossingB = Arrays.copyOf(this.crossingB, capacity);
+		}
+
+		this.crossingA[this.numCrossings] = a;
+		this.crossingB[this.numCrossings] = b;
+		this.numCrossings++;
+	}
+
+	private boolean isBefore(int i, int j) {
+		return this.heapX[i] < this.heapX[j] || (this.heapX[i] == this.heapX[j] && this.heapY[i] < this.heapY[j]);
+	}
+
+	private void pushCrossing(double x, double y, int a, int b) {
+		if(this.heapSize == this.heapX.length) {
+			int capacity = Math.max(16, this.heapSize*2);
+
+			this.heapX = Arrays.copyOf(this.heapX, capacity);
+			this.heapY = Arrays.copyOf(this.heapY, capacity);
+			this.heapA = Arrays.copyOf(this.heapA, capacity);
+			this.heapB = Arrays.copyOf(this.heapB, capacity);
+		}
+
+		int i = this.heapSize++;
+
+		setHeapItem(i, x, y, a, b);
+
+		while(i > 0 && isBefore(i, (i - 1)/2)) {
+			swapHeapItems(i, (i - 1)/2);
+			i = (i - 1)/2;
+		}
+	}
+
+	private void popCrossing() {
+		this.heapSize--;
+
+		if(this.heapSize == 0)
+			return;
+
+		swapHeapItems(0, this.heapSize);
+
+		int i = 0;
+
+		while(true) {
+			int first = i, child = 2*i + 1;
+
+			if(child < this.heapSize && isBefore(child, first))
+				first = child;
+
+			if(child + 1 < this.heapSize && isBefore(child + 1, first))
+				first = child + 1;
+
+			if(first == i)
+				break;
+
+			swapHeapItems(i, first);
+			i = first;
+		}
+	}
+
+	private void setHeapItem(int i, double x, double y, int a, int b) {
+		this.heapX[i] = x;
+		this.heapY[i] = y;
+		this.heapA[i] = a;
+		this.heapB[i] = b;
+	}
+
+	private void swapHeapItems(int i, int j) {
+		double x = this.heapX[i], y = this.heapY[i];
+		int a = this.heapA[i], b = this.heapB[i];
+
+		setHeapItem(i, this.heapX[j], this.heapY[j], this.heapA[j], this.heapB[j]);
+		setHeapItem(j, x, y, a, b);
+	}
+}
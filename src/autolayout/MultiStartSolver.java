@@ -0,0 +1,181 @@
+package autolayout;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Многократный запуск расчёта из разных начальных положений с выбором лучшей раскладки.
+// Результат силового расчёта сильно зависит от начального положения бабблов, поэтому
+// numStarts независимых копий задачи считаются параллельно в пуле потоков, и возвращается
+// копия с наименьшей оценкой LayoutQuality.getScore() (с учётом пересечений линий к пинам).
+// Запуск 0 стартует ровно с положений исходной задачи, остальные - с раскладки placeStart,
+// построенной на копии со своим seed. Расчёт идёт в два этапа: все запуски считаются до итерации,
+// на которой подключены все силы, и запуски, оценка которых там в hopelessScoreFactor раз хуже лучшей
+// оценки на той же итерации, прекращаются. Остальные считаются до конца. Оценки на этой итерации
+// не учитывают пересечения линий, но у всех запусков одинаково.
+public class MultiStartSolver {
+	public static class Result {
+		public final LayoutManager 	layout; // лучшая раскладка, расчёт в ней завершён
+		public final LayoutQuality 	quality;
+		public final int 			start; // номер запуска, давшего лучшую раскладку
+		public final int 			numCancelled; // сколько запусков прекращено досрочно
+
+		Result(LayoutManager layout, LayoutQuality quality, int start, int numCancelled) {
+			this.layout = layout;
+			this.quality = quality;
+			this.start = start;
+			this.numCancelled = numCancelled;
+		}
+	}
+
+	public int 		numStarts;
+	public float 	hopelessScoreFactor 	= 1.5f;
+
+	// начальная раскладка запусков 1..numStarts-1, вызывается на копии задачи с её собственным random
+	public Consumer<LayoutManager> placeStart = LayoutManager::placeBubblesRandomly;
+
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+
+	// собственный пул из min(numStarts, числа ядер) потоков
+	public MultiStartSolver(int numStarts) {
+		this(numStarts, Executors.newFixedThreadPool(Math.min(numStarts, Runtime.getRuntime().availableProcessors()), runnable -> {
+			Thread thread = new Thread(runnable, "multi-start solver");
+
+			thread.setDaemon(true);
+
+			return thread;
+		}), true);
+	}
+
+	// запуски выполняются во внешнем пуле, shutdown() его не останавливает
+	public MultiStartSolver(int numStarts, ExecutorService executor) {
+		this(numStarts, executor, false);
+	}
+
+	private MultiStartSolver(int numStarts, ExecutorService executor, boolean ownExecutor) {
+		if(numStarts < 1)
+			throw new IllegalArgumentException("Number of starts must be positive: " + numStarts);
+
+		this.numStarts = numStarts;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	// Решает задачу problem (она сама не изменяется). Результат зависит только от исходной задачи и seed:
+	// начальная раскладка запуска i определяется seed и i, а досрочная остановка сравнивает запуски
+	// на одной и той же итерации и не зависит от порядка их завершения
+	public Result solve(LayoutManager problem, long seed) throws InterruptedException {
+		// копии создаются в вызывающем потоке, чтобы исходная задача читалась только из него
+		List<LayoutManager> layouts = new ArrayList<LayoutManager>();
+
+		for(int start = 0; start < this.numStarts; start++) {
+			LayoutManager layout = problem.copy();
+
+			layout.parallel = false; // параллельны сами запуски
+			layout.random = new Random(seed*31 + start);
+
+			if(start > 0)
+				this.placeStart.accept(layout);
+
+			layouts.add(layout);
+		}
+
+		// этап 1: до подключения всех сил
+		List<Double> scores = invokeAll(layouts, layout -> runUntilAllForcesActive(layout));
+
+		double bestScore = Collections.min(scores);
+
+		List<LayoutManager> remaining = new ArrayList<LayoutManager>();
+		int numCancelled = 0;
+
+		for(int start = 0; start < this.numStarts; start++)
+			if(scores.get(start) > bestScore*this.hopelessScoreFactor)
+				numCancelled++;
+			else
+				remaining.add(layouts.get(start));
+
+		// этап 2: оставшиеся запуски до конца
+		List<LayoutQuality> qualities = invokeAll(remaining, layout -> run(layout));
+
+		LayoutManager best = null;
+		LayoutQuality bestQuality = null;
+
+		for(int i = 0; i < remaining.size(); i++) {
+			LayoutQuality quality = qualities.get(i);
+
+			// при равной оценке выигрывает запуск с меньшим номером
+			if(bestQuality == null || quality.getScore() < bestQuality.getScore()) {
+				bestQuality = quality;
+				best = remaining.get(i);
+			}
+		}
+
+		// у каждой копии свои метрики, итоги всех запусков (и прекращённых) собираются в метриках задачи
+		if(problem.metrics != null)
+			for(LayoutManager layout : layouts)
+				problem.metrics.add(layout.metrics);
+
+		return new Result(best, bestQuality, layouts.indexOf(best), numCancelled);
+	}
+
+	private interface Stage<T> {
+		T run(LayoutManager layout) throws InterruptedException;
+	}
+
+	// выполняет этап для всех раскладок в пуле и возвращает результаты в порядке раскладок
+	private <T> List<T> invokeAll(List<LayoutManager> layouts, Stage<T> stage) throws InterruptedException {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+
+		for(LayoutManager layout : layouts)
+			futures.add(this.executor.submit(() -> stage.run(layout)));
+
+		List<T> results = new ArrayList<T>();
+
+		try {
+			for(Future<T> future : futures)
+				results.add(future.get());
+		} catch(ExecutionException e) {
+			for(Future<T> future : futures)
+				future.cancel(true);
+
+			throw new IllegalStateException("Layout calculation failed", e.getCause());
+		} catch(InterruptedException e) {
+			for(Future<T> future : futures)
+				future.cancel(true);
+
+			throw e;
+		}
+
+		return results;
+	}
+
+	public void shutdown() {
+		if(this.ownExecutor)
+			this.executor.shutdown();
+	}
+
+	// Оценка раскладки на первой итерации, на которой подключены все силы (или после завершения расчёта,
+	// если он завершился раньше). Пересечения линий не считаются
+	private double runUntilAllForcesActive(LayoutManager layout) throws InterruptedException {
+		while(!layout.calculationDone && !layout.areAllForcesActive()) {
+			if(Thread.currentThread().isInterrupted())
+				throw new InterruptedException();
+
+			layout.process();
+		}
+
+		return layout.getQuality().getScore();
+	}
+
+	private LayoutQuality run(LayoutManager layout) throws InterruptedException {
+		while(!layout.calculationDone) {
+			if(Thread.currentThread().isInterrupted())
+				throw new InterruptedException();
+
+			layout.process();
+		}
+
+		return layout.getQuality(true);
+	}
+}
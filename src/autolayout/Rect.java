@@ -0,0 +1,139 @@
+package autolayout;
+
+import processing.core.*;
+
+public class Rect {
+	public PVector min, max;
+
+	public Rect() {
+		this.min = new PVector(Float.MAX_VALUE, Float.MAX_VALUE);
+		this.max = new PVector(Float.MIN_VALUE, Float.MIN_VALUE);
+	}
+
+	public Rect(PVector aMin, PVector aMax) {
+		this.min = aMin;
+		this.max = aMax;
+	}
+
+	public Rect(float xMin, float yMin, float xMax, float yMax) {
+		this.min = new PVector(xMin, yMin);
+		this.max = new PVector(xMax, yMax);
+	}
+
+	public Rect set(float xMin, float yMin, float xMax, float yMax) {
+		this.min.set(xMin, yMin);
+		this.max.set(xMax, yMax);
+
+		return this;
+	}
+
+	// делает прямоугольник пустым, как после new Rect()
+	public Rect setEmpty() {
+		return this.set(Float.MAX_VALUE, Float.MAX_VALUE, Float.MIN_VALUE, Float.MIN_VALUE);
+	}
+
+	public boolean isEmpty() {
+		return this.min.x > this.max.x || this.min.y > this.max.y;
+	}
+
+	public boolean isPointInside(PVector p) {
+		return this.isPointInside(p.x, p.y);
+	}
+
+	public boolean isPointInside(float x, float y) {
+		if(x < this.min.x || x > this.max.x || y < this.min.y || y > this.max.y)
+			return false;
+
+		return true;
+	}
+
+	public boolean intersects(Rect otherRect) {
+		return !(this.min.x > otherRect.max.x || this.min.y > otherRect.max.y || this.max.x < otherRect.min.x || this.max.y < otherRect.min.y);
+	}
+
+	public Rect getIntersection(Rect otherRect) {
+		return this.getIntersection(otherRect, new Rect());
+	}
+
+	// записывает пересечение в dest и возвращает его. Без пересечения dest становится пустым
+	public Rect getIntersection(Rect otherRect, Rect dest) {
+		if(!this.intersects(otherRect))
+			return dest.setEmpty();
+
+		return dest.set(Math.max(this.min.x, otherRect.min.x), Math.max(this.min.y, otherRect.min.y),
+			Math.min(this.max.x, otherRect.max.x), Math.min(this.max.y, otherRect.max.y));
+	}
+
+	// площадь пересечения, 0 без пересечения. То же, что getIntersection(otherRect).getSquare(), без выделения памяти
+	public float getIntersectionSquare(Rect otherRect) {
+		if(!this.intersects(otherRect))
+			return 0.0f;
+
+		return (Math.min(this.max.x, otherRect.max.x) - Math.max(this.min.x, otherRect.min.x))
+			*(Math.min(this.max.y, otherRect.max.y) - Math.max(this.min.y, otherRect.min.y));
+	}
+
+	// центр пересечения по осям, имеет смысл только при intersects(otherRect)
+	public float getIntersectionCenterX(Rect otherRect) {
+		return (Math.max(this.min.x, otherRect.min.x) + Math.min(this.max.x, otherRect.max.x))*0.5f;
+	}
+
+	public float getIntersectionCenterY(Rect otherRect) {
+		return (Math.max(this.min.y, otherRect.min.y) + Math.min(this.max.y, otherRect.max.y))*0.5f;
+	}
+
+	public float getSquare() {
+		if(this.isEmpty())
+			return 0.0f;
+
+		return (max.x - min.x)*(max.y-min.y);
+	}
+
+	public PVector getCenter() {
+		return this.getCenter(new PVector());
+	}
+
+	public PVector getCenter(PVector dest) {
+		return dest.set((this.min.x + this.max.x)*0.5f, (this.min.y + this.max.y)*0.5f);
+	}
+
+	public float getCenterX() {
+		return (this.min.x + this.max.x)*0.5f;
+	}
+
+	public float getCenterY() {
+		return (this.min.y + this.max.y)*0.5f;
+	}
+
+	public float getWidth() {
+		return this.max.x - this.min.x;
+	}
+
+	public float getHeight() {
+		return this.max.y - this.min.y;
+	}
+
+	// возвращает вектор, на который надо сместить прямоугольник, чтобы вписать в прямоугольник из аргумента
+	public PVector getShiftToFit(Rect borderRect) {
+		return this.getShiftToFit(borderRect, new PVector());
+	}
+
+	// то же, с записью результата в dest
+	public PVector getShiftToFit(Rect borderRect, PVector dest) {
+		dest.set(0.0f, 0.0f);
+
+		if(this.min.x < borderRect.min.x)
+			dest.x = borderRect.min.x - this.min.x;
+
+		if(this.min.y < borderRect.min.y)
+			dest.y = borderRect.min.y - this.min.y;
+
+		if(this.max.x > borderRect.max.x)
+			dest.x = (borderRect.max.x - this.max.x);
+
+		if(this.max.y > borderRect.max.y)
+			dest.y = (borderRect.max.y - this.max.y);
+
+		return dest;
+	}
+}
@@ -1,3 +1,5 @@
+package autolayout;
+
 import java.nio.*;
 import java.text.DecimalFormat;
 
@@ -0,0 +1,207 @@
+package autolayout;
+
+// Предобработанный силуэт модели. Хранится упакованно (структура массивов), без объекта на каждую точку:
+// координаты центров и веса точек лежат в параллельных массивах, что в разы уменьшает занимаемую память
+// и позволяет расчёту сил обходить точки последовательно.
+// После построения не изменяется, поэтому может использоваться несколькими LayoutManager одновременно.
+public class Silhouette {
+	public final int 	width, height; // размеры растра
+	public final float 	left, top; // координаты левого верхнего угла точки растра (0, 0)
+	public final float 	pointSize; // сторона квадрата точки силуэта
+
+	public final float[] weights; // растр весов (0-1) построчно, слабозначимые точки обнулены
+
+	// точки силуэта с ненулевым весом
+	public final int 	numPoints;
+	public final float[] pointX, pointY; // центры точек
+	public final float[] pointWeight;
+
+	public final SpatialGrid 		grid; // индекс точек для запросов по прямоугольнику
+	public final SilhouetteIntegral integral; // таблицы сумм весов и моментов
+
+	// следующий, вдвое более грубый уровень пирамиды. Строится при первом обращении.
+	// Построение детерминировано, поэтому гонка потоков может лишь построить уровень дважды
+	private volatile Silhouette coarser;
+
+	// координаты и веса точек в порядке grid.cellItems: numPoints x, затем numPoints y, затем numPoints весов.
+	// Точки одной строки ячеек сетки лежат подряд, их можно читать векторами. Строится при первом обращении.
+	// В конце запас из VECTOR_PADDING нулей, чтобы вектор, начатый на последних точках, не выходил за массив
+	private volatile float[] cellOrderedPoints;
+
+	static final int 	VECTOR_PADDING = 64;
+
+	// Сжатое представление из однородных блоков (SilhouetteRegions), строится при первом обращении.
+	// Блоки объединяют точки с разбросом веса не больше REGION_MAX_WEIGHT_ERROR, сторона блока - до REGION_MAX_BLOCK_SIZE точек
+	static final float 	REGION_MAX_WEIGHT_ERROR = 0.05f;
+	static final int 	REGION_MAX_BLOCK_SIZE = 16;
+
+	private volatile SilhouetteRegions regions;
+
+	// поле выхода на свободное место (EscapeField), строится при первом обращении
+	private volatile EscapeField escapeField;
+
+	public Silhouette(float[] weights, int width, int height, float left, float top, float pointSize, float gridCellSize) {
+		this.width = width;
+		this.height = height;
+		this.left = left;
+		this.top = top;
+		this.pointSize = pointSize;
+		this.weights = weights;
+
+		int count = 0;
+
+		for(float w : weights)
+			if(w > 0.0f)
+				count++;
+
+		this.numPoints = count;
+		this.pointX = new float[count];
+		this.pointY = new float[count];
+		this.pointWeight = new float[count];
+
+		int point = 0;
+
+		for(int j = 0; j < height; j++)
+			for(int i = 0; i < width; i++) {
+				float w = weights[j*width + i];
+
+				if(w <= 0.0f)
+					continue;
+
+				this.pointX[point] = left + (i + 0.5f)*pointSize;
+				this.pointY[point] = top + (j + 0.5f)*pointSize;
+				this.pointWeight[point] = w;
+
+				point++;
+			}
+
+		this.grid = new SpatialGrid(this.pointX, this.pointY, this.numPoints, gridCellSize);
+		this.integral = new SilhouetteIntegral(weights, width, height, left, top, pointSize);
+	}
+
+	// силуэт из готовых частей (например, загруженных из кеша), без повторной предобработки
+	Silhouette(float[] weights, int width, int height, float left, float top, float pointSize,
+			int numPoints, float[] pointX, float[] pointY, float[] pointWeight,
+			SpatialGrid grid, SilhouetteIntegral integral) {
+		this.width = width;
+		this.height = height;
+		this.left = left;
+		this.top = top;
+		this.pointSize = pointSize;
+		this.weights = weights;
+
+		this.numPoints = numPoints;
+		this.pointX = pointX;
+		this.pointY = pointY;
+		this.pointWeight = pointWeight;
+
+		this.grid = grid;
+		this.integral = integral;
+	}
+
+	// Строит силуэт из растра в формате PImage.pixels (ARGB, построчно), отцентрированный в точке (centerX, centerY).
+	// Предполагаем greyscale в исходнике, поэтому смотрим только красный канал
+	public static Silhouette fromPixels(int[] pixels, int width, int height, float centerX, float centerY,
+			float pointSize, float minWeight, float gridCellSize) {
+		float[] weights = new float[width*height];
+
+		for(int pixel = 0; pixel < width*height; pixel++) {
+			int r = (pixels[pixel] >> 16) & 0xFF;
+
+			float weight = (float)r/255.0f;
+
+			if(weight < minWeight) // не учитываем слабозначимые точки
+				continue;
+
+			weights[pixel] = weight;
+		}
+
+		return new Silhouette(weights, width, height,
+			centerX - pointSize*width/2, centerY - pointSize*height/2, pointSize, gridCellSize);
+	}
+
+	// Уровень пирамиды: 0 - сам силуэт, каждый следующий вдвое грубее по обеим осям.
+	// Если растр уже сжат до одной точки, возвращается самый грубый уровень
+	public Silhouette getLevel(int level) {
+		Silhouette sil = this;
+
+		for(int i = 0; i < level && (sil.width > 1 || sil.height > 1); i++)
+			sil = sil.getCoarser();
+
+		return sil;
+	}
+
+	public Silhouette getCoarser() {
+		Silhouette result = this.coarser;
+
+		if(result == null) {
+			result = downsample();
+
+			this.coarser = result;
+		}
+
+		return result;
+	}
+
+	// точки в порядке ячеек сетки, см. cellOrderedPoints. Как и для уровней пирамиды, гонка потоков лишь построит массив дважды
+	float[] getCellOrderedPoints() {
+		float[] result = this.cellOrderedPoints;
+
+		if(result == null) {
+			result = new float[this.numPoints*3 + VECTOR_PADDING];
+
+			for(int k = 0; k < this.numPoints; k++) {
+				int point = this.grid.cellItems[k];
+
+				result[k] = this.pointX[point];
+				result[this.numPoints + k] = this.pointY[point];
+				result[this.numPoints*2 + k] = this.pointWeight[point];
+			}
+
+			this.cellOrderedPoints = result;
+		}
+
+		return result;
+	}
+
+	public SilhouetteRegions getRegions() {
+		SilhouetteRegions result = this.regions;
+
+		if(result == null) {
+			result = new SilhouetteRegions(this, REGION_MAX_WEIGHT_ERROR, REGION_MAX_BLOCK_SIZE, this.grid.cellSize);
+
+			this.regions = result;
+		}
+
+		return result;
+	}
+
+	public EscapeField getEscapeField() {
+		EscapeField result = this.escapeField;
+
+		if(result == null) {
+			result = new EscapeField(this);
+
+			this.escapeField = result;
+		}
+
+		return result;
+	}
+
+	// Каждая точка грубого уровня - среднее четырёх точек (недостающие на краю считаются нулевыми).
+	// Точка вдвое больше по стороне, поэтому суммарный вес силуэта (вес * площадь) сохраняется.
+	// Ячейка индекса тоже удваивается, чтобы в ней оставалось столько же точек
+	private Silhouette downsample() {
+		int coarseWidth = (this.width + 1)/2;
+		int coarseHeight = (this.height + 1)/2;
+
+		float[] coarseWeights = new float[coarseWidth*coarseHeight];
+
+		for(int j = 0; j < this.height; j++)
+			for(int i = 0; i < this.width; i++)
+				coarseWeights[(j/2)*coarseWidth + i/2] += this.weights[j*this.width + i]*0.25f;
+
+		return new Silhouette(coarseWeights, coarseWidth, coarseHeight, this.left, this.top,
+			this.pointSize*2, this.grid.cellSize*2);
+	}
+}
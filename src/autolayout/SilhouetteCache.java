@@ -0,0 +1,378 @@
+package autolayout;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import javax.imageio.ImageIO;
+
+// Дисковый кеш предобработанных силуэтов.
+// Ключ - SHA-256 содержимого изображения (или растра) вместе с параметрами предобработки,
+// значение - файл <ключ>.sil с весами, таблицами сумм, точками и индексом точек.
+// Файл отображается в память через FileChannel.map(), поэтому повторная загрузка не декодирует
+// изображение и не повторяет предобработку. Таблицы сумм (основной объём) используются прямо из
+// отображения, остальное копируется в массивы целиком. Загруженные силуэты запоминаются (не больше maxLoaded,
+// по умолчанию DEFAULT_MAX_LOADED, давно не используемые забываются), и все LayoutManager, работающие с одним
+// кешем, получают один и тот же экземпляр.
+// Файлы сами с диска не удаляются: долго работающий сервис периодически вызывает trimFiles(), которая удаляет
+// давно не использованные файлы сверх заданного объёма. Время изменения файла обновляется при каждом чтении
+// с диска, по нему и определяется давность использования.
+//
+// Формат (little-endian): заголовок HEADER_SIZE байт, затем три таблицы сумм (double),
+// растр весов, pointX, pointY, pointWeight (float), cellStart, cellItems (int).
+public class SilhouetteCache {
+	static final int MAGIC 			= 0x414C5343; // "ALSC"
+	static final int FORMAT_VERSION = 1;
+	static final int HEADER_SIZE 	= 64; // кратно 8, чтобы таблицы double были выровнены
+
+	static final String FILE_SUFFIX = ".sil";
+
+	public static final int DEFAULT_MAX_LOADED = 64;
+
+	public final Path directory;
+	public final int maxLoaded;
+
+	private final LinkedHashMap<String, Silhouette> loaded;
+
+	public SilhouetteCache(Path directory) {
+		this(directory, DEFAULT_MAX_LOADED);
+	}
+
+	// maxLoaded - сколько загруженных силуэтов держать в памяти, 0 - не держать (только файлы)
+	public SilhouetteCache(Path directory, int maxLoaded) {
+		this.directory = directory;
+		this.maxLoaded = maxLoaded;
+
+		// порядок доступа: первым идёт самый давно использованный
+		this.loaded = new LinkedHashMap<String, Silhouette>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Silhouette> eldest) {
+				return size() > SilhouetteCache.this.maxLoaded;
+			}
+		};
+	}
+
+	// Силуэт из файла изображения, отцентрированный в точке (centerX, centerY).
+	// Изображение декодируется только если силуэта ещё нет в кеше
+	public Silhouette get(Path imageFile, float centerX, float centerY,
+			float pointSize, float minWeight, float gridCellSize) throws IOException {
+		byte[] content = Files.readAllBytes(imageFile);
+
+		MessageDigest digest = newDigest();
+
+		digest.update(content);
+
+		String key = getKey(digest, centerX, centerY, pointSize, minWeight, gridCellSize);
+
+		return get(key, () -> {
+			BufferedImage img = ImageIO.read(new ByteArrayInputStream(content));
+
+			if(img == null)
+				throw new IOException("Can't decode " + imageFile);
+
+			int width = img.getWidth(), height = img.getHeight();
+
+			int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+
+			return Silhouette.fromPixels(pixels, width, height, centerX, centerY, pointSize, minWeight, gridCellSize);
+		});
+	}
+
+	// Силуэт из растра в формате PImage.pixels. Декодирование здесь уже сделано, кеш экономит предобработку
+	public Silhouette get(int[] pixels, int width, int height, float centerX, float centerY,
+			float pointSize, float minWeight, float gridCellSize) throws IOException {
+		MessageDigest digest = newDigest();
+
+		ByteBuffer raster = ByteBuffer.allocate(8 + 4*pixels.length).order(ByteOrder.LITTLE_ENDIAN);
+
+		raster.putInt(width).putInt(height);
+		raster.asIntBuffer().put(pixels);
+
+		digest.update(raster.array());
+
+		String key = getKey(digest, centerX, centerY, pointSize, minWeight, gridCellSize);
+
+		return get(key, () -> Silhouette.fromPixels(pixels, width, height, centerX, centerY, pointSize, minWeight, gridCellSize));
+	}
+
+	// забывает загруженные силуэты. Файлы кеша остаются на диске
+	public void clear() {
+		synchronized(this.loaded) {
+			this.loaded.clear();
+		}
+	}
+
+	// Удаляет самые давно использованные файлы кеша, пока их общий размер больше maxBytes.
+	// Возвращает число удалённых файлов. Уже загруженные силуэты остаются рабочими: отображение файла
+	// в память не зависит от его удаления (в Windows удаление отображённого файла не удастся, он пропускается)
+	public int trimFiles(long maxBytes) throws IOException {
+		if(!Files.isDirectory(this.directory))
+			return 0;
+
+		List<Path> files = new ArrayList<Path>();
+		Map<Path, FileTime> times = new HashMap<Path, FileTime>();
+		long totalSize = 0;
+
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + FILE_SUFFIX)) {
+			for(Path file : stream) {
+				try {
+					times.put(file, Files.getLastModifiedTime(file));
+					totalSize += Files.size(file);
+					files.add(file);
+				} catch(NoSuchFileException e) {
+					// файл удалил другой процесс
+				}
+			}
+		}
+
+		files.sort(Comparator.comparing(times::get));
+
+		int numDeleted = 0;
+
+		for(int i = 0; i < files.size() && totalSize > maxBytes; i++) {
+			Path file = files.get(i);
+
+			try {
+				long size = Files.size(file);
+
+				if(Files.deleteIfExists(file)) {
+					totalSize -= size;
+					numDeleted++;
+				}
+			} catch(IOException e) {
+				// файл занят или уже удалён, остальные всё равно чистим
+			}
+		}
+
+		return numDeleted;
+	}
+
+	private interface Builder {
+		Silhouette build() throws IOException;
+	}
+
+	private Silhouette get(String key, Builder builder) throws IOException {
+		Silhouette silhouette;
+
+		synchronized(this.loaded) {
+			silhouette = this.loaded.get(key);
+		}
+
+		if(silhouette != null)
+			return silhouette;
+
+		Path file = this.directory.resolve(key + FILE_SUFFIX);
+
+		if(Files.isRegularFile(file)) {
+			silhouette = read(file);
+
+			if(silhouette != null)
+				touch(file);
+		}
+
+		if(silhouette == null) { // нет в кеше или файл от другой версии формата
+			silhouette = builder.build();
+
+			write(silhouette, file);
+		}
+
+		synchronized(this.loaded) {
+			Silhouette previous = this.loaded.putIfAbsent(key, silhouette);
+
+			return previous != null ? previous : silhouette;
+		}
+	}
+
+	// отмечает использование файла для trimFiles()
+	private static void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch(IOException e) {
+			// кеш только для чтения: файл просто раньше попадёт под очистку
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 обязателен для любой JVM
+		}
+	}
+
+	// параметры предобработки входят в ключ: тот же файл с другими параметрами даёт другой силуэт
+	private static String getKey(MessageDigest digest, float centerX, float centerY,
+			float pointSize, float minWeight, float gridCellSize) {
+		ByteBuffer params = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+
+		params.putInt(FORMAT_VERSION);
+		params.putFloat(centerX).putFloat(centerY);
+		params.putFloat(pointSize).putFloat(minWeight).putFloat(gridCellSize);
+
+		digest.update(params.array());
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static long getFileSize(int width, int height, int numPoints, int numCells) {
+		long tableSize = 8L*(width + 1)*(height + 1);
+
+		return HEADER_SIZE + 3*tableSize + 4L*width*height + 3*4L*numPoints + 4L*(numCells + 1) + 4L*numPoints;
+	}
+
+	// Возвращает null, если файл не в текущем формате
+	static Silhouette read(Path file) throws IOException {
+		MappedByteBuffer mapped;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE)
+				return null;
+
+			// отображение остаётся действительным и после закрытия канала
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+			return null;
+
+		buffer.position(8);
+
+		int width = buffer.getInt(), height = buffer.getInt();
+		float left = buffer.getFloat(), top = buffer.getFloat(), pointSize = buffer.getFloat();
+		int numPoints = buffer.getInt();
+		float gridCellSize = buffer.getFloat(), gridOriginX = buffer.getFloat(), gridOriginY = buffer.getFloat();
+		int numCellsX = buffer.getInt(), numCellsY = buffer.getInt();
+
+		if(width <= 0 || height <= 0 || numPoints < 0 || numCellsX <= 0 || numCellsY <= 0)
+			return null;
+
+		if(buffer.capacity() != getFileSize(width, height, numPoints, numCellsX*numCellsY))
+			return null;
+
+		buffer.position(HEADER_SIZE);
+
+		int tableSize = (width + 1)*(height + 1);
+
+		DoubleBuffer sumWeight = sliceDoubles(buffer, tableSize);
+		DoubleBuffer sumMomentX = sliceDoubles(buffer, tableSize);
+		DoubleBuffer sumMomentY = sliceDoubles(buffer, tableSize);
+
+		float[] weights = readFloats(buffer, width*height);
+		float[] pointX = readFloats(buffer, numPoints);
+		float[] pointY = readFloats(buffer, numPoints);
+		float[] pointWeight = readFloats(buffer, numPoints);
+
+		int[] cellStart = readInts(buffer, numCellsX*numCellsY + 1);
+		int[] cellItems = readInts(buffer, numPoints);
+
+		SpatialGrid grid = new SpatialGrid(gridCellSize, gridOriginX, gridOriginY, numCellsX, numCellsY, cellStart, cellItems);
+		SilhouetteIntegral integral = new SilhouetteIntegral(width, height, left, top, pointSize, sumWeight, sumMomentX, sumMomentY);
+
+		return new Silhouette(weights, width, height, left, top, pointSize, numPoints, pointX, pointY, pointWeight, grid, integral);
+	}
+
+	// Пишет во временный файл и переименовывает, чтобы параллельные читатели не увидели недописанный файл
+	static void write(Silhouette silhouette, Path file) throws IOException {
+		SpatialGrid grid = silhouette.grid;
+		SilhouetteIntegral integral = silhouette.integral;
+
+		long size = getFileSize(silhouette.width, silhouette.height, silhouette.numPoints, grid.numCellsX*grid.numCellsY);
+
+		if(size > Integer.MAX_VALUE)
+			throw new IOException("Silhouette is too large to cache: " + silhouette.width + "x" + silhouette.height);
+
+		ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+		buffer.putInt(silhouette.width).putInt(silhouette.height);
+		buffer.putFloat(silhouette.left).putFloat(silhouette.top).putFloat(silhouette.pointSize);
+		buffer.putInt(silhouette.numPoints);
+		buffer.putFloat(grid.cellSize).putFloat(grid.originX).putFloat(grid.originY);
+		buffer.putInt(grid.numCellsX).putInt(grid.numCellsY);
+
+		buffer.position(HEADER_SIZE);
+
+		putDoubles(buffer, integral.sumWeight);
+		putDoubles(buffer, integral.sumMomentX);
+		putDoubles(buffer, integral.sumMomentY);
+
+		putFloats(buffer, silhouette.weights, silhouette.width*silhouette.height);
+		putFloats(buffer, silhouette.pointX, silhouette.numPoints);
+		putFloats(buffer, silhouette.pointY, silhouette.numPoints);
+		putFloats(buffer, silhouette.pointWeight, silhouette.numPoints);
+
+		putInts(buffer, grid.cellStart, grid.cellStart.length);
+		putInts(buffer, grid.cellItems, silhouette.numPoints);
+
+		buffer.flip();
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "silhouette", ".tmp");
+
+		try {
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+			}
+
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static DoubleBuffer sliceDoubles(ByteBuffer buffer, int count) {
+		ByteBuffer slice = buffer.slice(buffer.position(), 8*count).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.position(buffer.position() + 8*count);
+
+		return slice.asDoubleBuffer();
+	}
+
+	private static float[] readFloats(ByteBuffer buffer, int count) {
+		float[] values = new float[count];
+
+		buffer.asFloatBuffer().get(values);
+		buffer.position(buffer.position() + 4*count);
+
+		return values;
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4*count);
+
+		return values;
+	}
+
+	private static void putDoubles(ByteBuffer buffer, DoubleBuffer values) {
+		buffer.asDoubleBuffer().put(values.duplicate().clear());
+		buffer.position(buffer.position() + 8*values.capacity());
+	}
+
+	private static void putFloats(ByteBuffer buffer, float[] values, int count) {
+		buffer.asFloatBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 4*count);
+	}
+
+	private static void putInts(ByteBuffer buffer, int[] values, int count) {
+		buffer.asIntBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 4*count);
+	}
+}
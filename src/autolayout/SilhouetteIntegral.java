@@ -0,0 +1,186 @@
+package autolayout;
+
+import java.nio.DoubleBuffer;
+
+// Таблицы сумм (integral image) весов силуэта и их первых моментов (x*w, y*w).
+// Силуэт рассматривается как кусочно-постоянная плотность: каждая точка растра - квадрат
+// со стороной cellSize и постоянным весом. Интеграл веса и моментов по любому
+// прямоугольнику, выровненному по осям, считается за фиксированное число обращений к таблицам,
+// независимо от разрешения силуэта. Частично перекрытые ячейки учитываются точно.
+// Таблицы хранятся в DoubleBuffer: либо в куче, либо как представление файла кеша (см. SilhouetteCache),
+// отображённого в память, тогда их делят все загрузившие силуэт экземпляры и процессы.
+public class SilhouetteIntegral {
+	public final int 	width, height; // размеры растра в ячейках
+	public final float 	left, top; // координаты левого верхнего угла ячейки (0, 0)
+	public final float 	cellSize;
+
+	// S(c, r) - сумма весов ячеек с i < c, j < r. Размер таблиц (width + 1)*(height + 1)
+	// Доступны в пакете для записи в кеш
+	final DoubleBuffer sumWeight;
+	final DoubleBuffer sumMomentX; // сумма w*x по центрам ячеек
+	final DoubleBuffer sumMomentY; // сумма w*y по центрам ячеек
+
+	public SilhouetteIntegral(float[] weights, int width, int height, float left, float top, float cellSize) {
+		this.width = width;
+		this.height = height;
+		this.left = left;
+		this.top = top;
+		this.cellSize = cellSize;
+
+		int stride = width + 1;
+
+		double[] sumWeight = new double[stride*(height + 1)];
+		double[] sumMomentX = new double[stride*(height + 1)];
+		double[] sumMomentY = new double[stride*(height + 1)];
+
+		for(int j = 0; j < height; j++) {
+			double rowWeight = 0.0, rowMomentX = 0.0, rowMomentY = 0.0;
+
+			float cy = getCellCenterY(j);
+
+			for(int i = 0; i < width; i++) {
+				float w = weights[j*width + i];
+
+				rowWeight += w;
+				rowMomentX += w*getCellCenterX(i);
+				rowMomentY += w*cy;
+
+				int idx = (j + 1)*stride + i + 1;
+				int idxAbove = j*stride + i + 1;
+
+				sumWeight[idx] = sumWeight[idxAbove] + rowWeight;
+				sumMomentX[idx] = sumMomentX[idxAbove] + rowMomentX;
+				sumMomentY[idx] = sumMomentY[idxAbove] + rowMomentY;
+			}
+		}
+
+		this.sumWeight = DoubleBuffer.wrap(sumWeight);
+		this.sumMomentX = DoubleBuffer.wrap(sumMomentX);
+		this.sumMomentY = DoubleBuffer.wrap(sumMomentY);
+	}
+
+	// таблицы, построенные ранее (например, загруженные из кеша). Размер каждой (width + 1)*(height + 1)
+	public SilhouetteIntegral(int width, int height, float left, float top, float cellSize,
+			DoubleBuffer sumWeight, DoubleBuffer sumMomentX, DoubleBuffer sumMomentY) {
+		int size = (width + 1)*(height + 1);
+
+		if(sumWeight.capacity() != size || sumMomentX.capacity() != size || sumMomentY.capacity() != size)
+			throw new IllegalArgumentException("Table size doesn't match " + width + "x" + height);
+
+		this.width = width;
+		this.height = height;
+		this.left = left;
+		this.top = top;
+		this.cellSize = cellSize;
+
+		this.sumWeight = sumWeight;
+		this.sumMomentX = sumMomentX;
+		this.sumMomentY = sumMomentY;
+	}
+
+	public float getCellCenterX(int i) {
+		return this.left + (i + 0.5f)*this.cellSize;
+	}
+
+	public float getCellCenterY(int j) {
+		return this.top + (j + 0.5f)*this.cellSize;
+	}
+
+	// интеграл веса силуэта по прямоугольнику (вес * площадь перекрытия)
+	public double getWeight(Rect rect) {
+		return getCumulativeWeight(rect.max.x, rect.max.y) - getCumulativeWeight(rect.min.x, rect.max.y)
+			- getCumulativeWeight(rect.max.x, rect.min.y) + getCumulativeWeight(rect.min.x, rect.min.y);
+	}
+
+	// интеграл x*w по прямоугольнику. Деление на getWeight() даёт x центра масс перекрытого силуэта
+	public double getMomentX(Rect rect) {
+		return getCumulativeMomentX(rect.max.x, rect.max.y) - getCumulativeMomentX(rect.min.x, rect.max.y)
+			- getCumulativeMomentX(rect.max.x, rect.min.y) + getCumulativeMomentX(rect.min.x, rect.min.y);
+	}
+
+	public double getMomentY(Rect rect) {
+		return getCumulativeMomentY(rect.max.x, rect.max.y) - getCumulativeMomentY(rect.min.x, rect.max.y)
+			- getCumulativeMomentY(rect.max.x, rect.min.y) + getCumulativeMomentY(rect.min.x, rect.min.y);
+	}
+
+	// Интегралы по области (-inf, x] x (-inf, y]. Точка попадает в ячейку (c, r) с дробными
+	// смещениями f, g внутри неё. Для веса это билинейная интерполяция таблицы,
+	// для моментов частично покрытый столбец (строка) досчитывается аналитически.
+
+	private double getCumulativeWeight(float x, float y) {
+		float u = (x - this.left)/this.cellSize;
+		float v = (y - this.top)/this.cellSize;
+
+		int c = clampCell(u, this.width);
+		int r = clampCell(v, this.height);
+
+		double f = clampFraction(u - c);
+		double g = clampFraction(v - r);
+
+		double s00 = at(this.sumWeight, c, r), s10 = at(this.sumWeight, c + 1, r);
+		double s01 = at(this.sumWeight, c, r + 1), s11 = at(this.sumWeight, c + 1, r + 1);
+
+		double sum = (1 - f)*(1 - g)*s00 + f*(1 - g)*s10 + (1 - f)*g*s01 + f*g*s11;
+
+		return sum*this.cellSize*this.cellSize;
+	}
+
+	private double getCumulativeMomentX(float x, float y) {
+		float u = (x - this.left)/this.cellSize;
+		float v = (y - this.top)/this.cellSize;
+
+		int c = clampCell(u, this.width);
+		int r = clampCell(v, this.height);
+
+		double f = clampFraction(u - c);
+		double g = clampFraction(v - r);
+
+		double s00 = at(this.sumWeight, c, r), s10 = at(this.sumWeight, c + 1, r);
+		double s01 = at(this.sumWeight, c, r + 1), s11 = at(this.sumWeight, c + 1, r + 1);
+
+		double cellWeight = s11 - s01 - s10 + s00;
+
+		// полные столбцы левее c
+		double full = at(this.sumMomentX, c, r) + g*(at(this.sumMomentX, c, r + 1) - at(this.sumMomentX, c, r));
+
+		// столбец c, покрытый на долю f: интеграл x по [left_c, x]
+		double partial = f*(getCellCenterX(c) + (f - 1)*this.cellSize*0.5)*((s10 - s00) + g*cellWeight);
+
+		return (full + partial)*this.cellSize*this.cellSize;
+	}
+
+	private double getCumulativeMomentY(float x, float y) {
+		float u = (x - this.left)/this.cellSize;
+		float v = (y - this.top)/this.cellSize;
+
+		int c = clampCell(u, this.width);
+		int r = clampCell(v, this.height);
+
+		double f = clampFraction(u - c);
+		double g = clampFraction(v - r);
+
+		double s00 = at(this.sumWeight, c, r), s10 = at(this.sumWeight, c + 1, r);
+		double s01 = at(this.sumWeight, c, r + 1), s11 = at(this.sumWeight, c + 1, r + 1);
+
+		double cellWeight = s11 - s01 - s10 + s00;
+
+		double full = at(this.sumMomentY, c, r) + f*(at(this.sumMomentY, c + 1, r) - at(this.sumMomentY, c, r));
+
+		double partial = g*(getCellCenterY(r) + (g - 1)*this.cellSize*0.5)*((s01 - s00) + f*cellWeight);
+
+		return (full + partial)*this.cellSize*this.cellSize;
+	}
+
+	// абсолютное чтение не меняет позицию буфера, поэтому безопасно из нескольких потоков
+	private double at(DoubleBuffer table, int c, int r) {
+		return table.get(r*(this.width + 1) + c);
+	}
+
+	private static int clampCell(float u, int size) {
+		return Math.max(0, Math.min(size - 1, (int)Math.floor(u)));
+	}
+
+	private static double clampFraction(double f) {
+		return Math.max(0.0, Math.min(1.0, f));
+	}
+}
@@ -0,0 +1,123 @@
+package autolayout;
+
+import java.util.*;
+
+// Сжатое представление силуэта для режима SilhouetteForceMode.REGIONS: точки растра объединены в квадратные
+// блоки квадродерева, внутри которых вес почти одинаков (разброс не больше maxWeightError). Блок хранится
+// как один прямоугольник со средним весом, поэтому сплошные области силуэта дают в десятки раз меньше
+// элементов, чем точек. Сторона блока ограничена maxBlockSize точками, чтобы направление силы от
+// большого блока не становилось слишком грубым.
+// Как и силуэт, после построения не изменяется и может использоваться из нескольких потоков.
+public class SilhouetteRegions {
+	public final int 		numRegions;
+	public final float[] 	minX, minY, maxX, maxY;
+	public final float[] 	weight; // средний вес точек блока
+
+	// наибольшие половины сторон блоков: на столько расширяется запрос к grid, построенной по центрам блоков
+	public final float 		maxHalfWidth, maxHalfHeight;
+
+	public final SpatialGrid grid;
+
+	// параметры построения
+	private final Silhouette silhouette;
+	private final float 	maxWeightError;
+	private final int 		maxBlockSize;
+
+	public SilhouetteRegions(Silhouette silhouette, float maxWeightError, int maxBlockSize, float gridCellSize) {
+		this.silhouette = silhouette;
+		this.maxWeightError = maxWeightError;
+		this.maxBlockSize = maxBlockSize;
+
+		int size = 1;
+
+		while(size < Math.max(silhouette.width, silhouette.height))
+			size *= 2;
+
+		// блоки: minX, minY, maxX, maxY, вес
+		List<float[]> blocks = new ArrayList<float[]>();
+
+		addBlocks(0, 0, size, blocks);
+
+		this.numRegions = blocks.size();
+
+		this.minX = new float[this.numRegions];
+		this.minY = new float[this.numRegions];
+		this.maxX = new float[this.numRegions];
+		this.maxY = new float[this.numRegions];
+		this.weight = new float[this.numRegions];
+
+		float[] centerX = new float[this.numRegions];
+		float[] centerY = new float[this.numRegions];
+
+		float halfWidth = 0.0f, halfHeight = 0.0f;
+
+		for(int i = 0; i < this.numRegions; i++) {
+			float[] block = blocks.get(i);
+
+			this.minX[i] = block[0];
+			this.minY[i] = block[1];
+			this.maxX[i] = block[2];
+			this.maxY[i] = block[3];
+			this.weight[i] = block[4];
+
+			centerX[i] = (this.minX[i] + this.maxX[i])*0.5f;
+			centerY[i] = (this.minY[i] + this.maxY[i])*0.5f;
+
+			halfWidth = Math.max(halfWidth, (this.maxX[i] - this.minX[i])*0.5f);
+			halfHeight = Math.max(halfHeight, (this.maxY[i] - this.minY[i])*0.5f);
+		}
+
+		this.maxHalfWidth = halfWidth;
+		this.maxHalfHeight = halfHeight;
+
+		// ячейка не меньше самого большого блока, чтобы расширенный запрос захватывал мало лишних ячеек
+		this.grid = new SpatialGrid(centerX, centerY, this.numRegions,
+			Math.max(gridCellSize, Math.max(halfWidth, halfHeight)*2));
+	}
+
+	// Блок растра size x size с левым верхним углом (i0, j0). Однородный блок добавляется целиком,
+	// неоднородный делится на четыре. Части блока за пределами растра считаются нулевыми
+	private void addBlocks(int i0, int j0, int size, List<float[]> blocks) {
+		if(i0 >= this.silhouette.width || j0 >= this.silhouette.height)
+			return;
+
+		boolean inside = i0 + size <= this.silhouette.width && j0 + size <= this.silhouette.height;
+
+		float minWeight = Float.MAX_VALUE, maxWeight = 0.0f, sumWeight = 0.0f;
+
+		int iEnd = Math.min(i0 + size, this.silhouette.width);
+		int jEnd = Math.min(j0 + size, this.silhouette.height);
+
+		for(int j = j0; j < jEnd; j++)
+			for(int i = i0; i < iEnd; i++) {
+				float w = this.silhouette.weights[j*this.silhouette.width + i];
+
+				minWeight = Math.min(minWeight, w);
+				maxWeight = Math.max(maxWeight, w);
+				sumWeight += w;
+			}
+
+		if(maxWeight <= 0.0f) // пустой блок
+			return;
+
+		boolean uniform = inside && minWeight > 0.0f && maxWeight - minWeight <= this.maxWeightError;
+
+		if(size == 1 || (uniform && size <= this.maxBlockSize)) {
+			float pointSize = this.silhouette.pointSize;
+			float left = this.silhouette.left, top = this.silhouette.top;
+
+			blocks.add(new float[] {
+				left + i0*pointSize, top + j0*pointSize, left + (i0 + size)*pointSize, top + (j0 + size)*pointSize,
+				sumWeight/(size*size) });
+
+			return;
+		}
+
+		int half = size/2;
+
+		addBlocks(i0, j0, half, blocks);
+		addBlocks(i0 + half, j0, half, blocks);
+		addBlocks(i0, j0 + half, half, blocks);
+		addBlocks(i0 + half, j0 + half, half, blocks);
+	}
+}
@@ -0,0 +1,95 @@
+package autolayout;
+
+import jdk.incubator.vector.*;
+
+// Векторный вариант обхода точек силуэта в calcSilhouetteForce (режим POINTS): та же арифметика пересечения
+// прямоугольника баббла с квадратами точек, но сразу для SPECIES.length() точек (8 на AVX2, 16 на AVX-512).
+// Точки читаются из Silhouette.getCellOrderedPoints(), где точки строки ячеек сетки лежат подряд,
+// а в конце есть запас на чтение целого вектора (до 64 полос).
+// Класс использует инкубаторный модуль jdk.incubator.vector, поэтому загружается, только если модуль
+// подключён (java --add-modules jdk.incubator.vector), см. LayoutManager.VECTOR_API_AVAILABLE.
+// Суммы по точкам складываются в другом порядке, поэтому результат совпадает со скалярным до округления float
+final class SilhouetteVectorKernel {
+	static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	// номера полос 0, 1, 2... для маски полос внутри отрезка. Загрузка с маской в JDK 17 медленная,
+	// поэтому векторы читаются целиком (массив точек дополнен в конце), а лишние полосы отбрасываются маской
+	private static final FloatVector LANES = FloatVector.fromArray(SPECIES, iota(SPECIES.length()), 0);
+
+	// индексы сумм в массиве sums
+	static final int FORCE_X = 0, FORCE_Y = 1, COVERED = 2, COVERAGE = 3, NUM_SUMS = 4;
+
+	private SilhouetteVectorKernel() {
+	}
+
+	private static float[] iota(int length) {
+		float[] values = new float[length];
+
+		for(int i = 0; i < length; i++)
+			values[i] = i;
+
+		return values;
+	}
+
+	// Добавляет к sums вклад точек from..to-1 (в порядке ячеек) в силу, перекрытый вес прямоугольника rect
+	// и перекрытый вес самого баббла. Возвращает число перекрытых точек
+	static int accumulate(float[] points, int numPoints, int from, int to, float halfPointSize, Rect rect,
+			float bubbleMinX, float bubbleMinY, float bubbleMaxX, float bubbleMaxY, float posX, float posY, float[] sums) {
+		FloatVector forceX = FloatVector.zero(SPECIES);
+		FloatVector forceY = FloatVector.zero(SPECIES);
+		FloatVector covered = FloatVector.zero(SPECIES);
+		FloatVector coverage = FloatVector.zero(SPECIES);
+
+		int numHits = 0;
+
+		for(int k = from; k < to; k += SPECIES.length()) {
+			VectorMask<Float> inRange = LANES.compare(VectorOperators.LT, (float)(to - k));
+
+			FloatVector x = FloatVector.fromArray(SPECIES, points, k);
+			FloatVector y = FloatVector.fromArray(SPECIES, points, numPoints + k);
+			FloatVector weight = FloatVector.fromArray(SPECIES, points, numPoints*2 + k);
+
+			// пересечение прямоугольника баббла с квадратом точки силуэта
+			FloatVector minX = x.sub(halfPointSize).max(rect.min.x);
+			FloatVector minY = y.sub(halfPointSize).max(rect.min.y);
+			FloatVector maxX = x.add(halfPointSize).min(rect.max.x);
+			FloatVector maxY = y.add(halfPointSize).min(rect.max.y);
+
+			VectorMask<Float> hit = inRange.and(minX.compare(VectorOperators.LE, maxX)).and(minY.compare(VectorOperators.LE, maxY));
+
+			if(!hit.anyTrue())
+				continue;
+
+			numHits += hit.trueCount();
+
+			FloatVector dirX = FloatVector.broadcast(SPECIES, posX).sub(minX.add(maxX).mul(0.5f));
+			FloatVector dirY = FloatVector.broadcast(SPECIES, posY).sub(minY.add(maxY).mul(0.5f));
+
+			FloatVector weightedSquare = maxX.sub(minX).mul(maxY.sub(minY)).mul(weight);
+
+			covered = covered.add(weightedSquare, hit);
+
+			// часть перекрытия, приходящаяся на сам баббл
+			FloatVector coveredX = maxX.min(bubbleMaxX).sub(minX.max(bubbleMinX));
+			FloatVector coveredY = maxY.min(bubbleMaxY).sub(minY.max(bubbleMinY));
+
+			VectorMask<Float> inBubble = hit.and(coveredX.compare(VectorOperators.GT, 0.0f)).and(coveredY.compare(VectorOperators.GT, 0.0f));
+
+			coverage = coverage.add(coveredX.mul(coveredY).mul(weight), inBubble);
+
+			FloatVector dirLength = dirX.mul(dirX).add(dirY.mul(dirY)).sqrt();
+
+			VectorMask<Float> hasDir = hit.and(dirLength.compare(VectorOperators.GT, 0.0f));
+
+			forceX = forceX.add(dirX.div(dirLength).mul(weightedSquare), hasDir);
+			forceY = forceY.add(dirY.div(dirLength).mul(weightedSquare), hasDir);
+		}
+
+		sums[FORCE_X] += forceX.reduceLanes(VectorOperators.ADD);
+		sums[FORCE_Y] += forceY.reduceLanes(VectorOperators.ADD);
+		sums[COVERED] += covered.reduceLanes(VectorOperators.ADD);
+		sums[COVERAGE] += coverage.reduceLanes(VectorOperators.ADD);
+
+		return numHits;
+	}
+}
@@ -0,0 +1,140 @@
+package autolayout;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Метрики расчёта: время каждой силы и итерации, выделенная память на итерацию,
+// число проверок пересечений и число найденных пересечений на итерацию.
+// Подключается через LayoutManager.metrics. Когда метрики не заданы (null), расчёт их не собирает,
+// и остаётся только проверка ссылки на null. Счётчики итерации общие для всех потоков одного LayoutManager,
+// поэтому у каждого LayoutManager свои метрики: copy() создаёт новые, а итоги копий собираются через add().
+public class SolveMetrics {
+	// проверки пересечений одного вида: кандидаты (что проверили) и попадания (что пересеклось).
+	// Считаются фактически выполненные проверки: при расчёте по одному бабблу каждая пара бабблов
+	// проверяется дважды, при sweep-and-prune - один раз
+	public class IntersectionCounter {
+		public final Histogram candidates, hits;
+
+		private final LongAdder iterationCandidates = new LongAdder();
+		private final LongAdder iterationHits = new LongAdder();
+
+		IntersectionCounter(String name) {
+			this.candidates = register(new Histogram(name + " candidates", "per iteration"));
+			this.hits = register(new Histogram(name + " hits", "per iteration"));
+		}
+
+		public void add(long candidates, long hits) {
+			this.iterationCandidates.add(candidates);
+			this.iterationHits.add(hits);
+		}
+
+		void endIteration() {
+			this.candidates.record(this.iterationCandidates.sumThenReset());
+			this.hits.record(this.iterationHits.sumThenReset());
+		}
+	}
+
+	private final List<Histogram> histograms = new ArrayList<Histogram>();
+
+	// время расчёта каждой силы, на один баббл (попарные силы пересечения - на всю итерацию)
+	public final Histogram silhouetteForce 			= register(new Histogram("calcSilhouetteForce", "ns"));
+	public final Histogram uiIntersectionForce 		= register(new Histogram("calcUIIntersectionForce", "ns"));
+	public final Histogram bubbleLongRangeForce 	= register(new Histogram("calcBubbleLongRangeForce", "ns"));
+	public final Histogram bubbleIntersectionForce 	= register(new Histogram("calcBubbleIntersectionForce", "ns"));
+	public final Histogram bubbleIntersectionForces = register(new Histogram("calcBubbleIntersectionForces", "ns"));
+	public final Histogram pinsForce 				= register(new Histogram("calcPinsForce", "ns"));
+
+	public final Histogram iterationTime 			= register(new Histogram("iteration", "ns"));
+
+	// память, выделенная потоком расчёта за итерацию. В параллельном режиме выделения в пуле потоков не учитываются
+	public final Histogram iterationAllocation 		= register(new Histogram("iteration allocation", "bytes"));
+
+	public final IntersectionCounter silhouettePoints 	= new IntersectionCounter("silhouette points");
+	public final IntersectionCounter uiElements 		= new IntersectionCounter("UI elements");
+	public final IntersectionCounter bubblePairs 		= new IntersectionCounter("bubble pairs");
+	public final IntersectionCounter pins 				= new IntersectionCounter("pins");
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	public SolveMetrics() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		// выделенная память доступна только в JVM с com.sun.management (HotSpot, OpenJ9)
+		if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+			this.threadBean = (com.sun.management.ThreadMXBean)bean;
+			this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else
+			this.threadBean = null;
+	}
+
+	private Histogram register(Histogram histogram) {
+		this.histograms.add(histogram);
+
+		return histogram;
+	}
+
+	public List<Histogram> getHistograms() {
+		return Collections.unmodifiableList(this.histograms);
+	}
+
+	// байты, выделенные текущим потоком с его старта, или -1, если JVM это не поддерживает
+	long getAllocatedBytes() {
+		return this.threadBean != null ? this.threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	void endIteration(long startNanos, long startAllocatedBytes) {
+		this.iterationTime.record(System.nanoTime() - startNanos);
+
+		if(startAllocatedBytes >= 0)
+			this.iterationAllocation.record(getAllocatedBytes() - startAllocatedBytes);
+
+		this.silhouettePoints.endIteration();
+		this.uiElements.endIteration();
+		this.bubblePairs.endIteration();
+		this.pins.endIteration();
+	}
+
+	// добавляет значения метрик другого расчёта, например копии задачи в MultiStartSolver
+	public void add(SolveMetrics other) {
+		for(int i = 0; i < this.histograms.size(); i++)
+			this.histograms.get(i).add(other.histograms.get(i));
+	}
+
+	public void reset() {
+		for(Histogram histogram : this.histograms)
+			histogram.reset();
+	}
+
+	public void print(PrintStream out) {
+		out.println(String.format("%-36s %10s %12s %12s %12s %12s %12s %14s", "metric", "count", "min", "p50", "p90", "p99", "max", "mean"));
+
+		for(Histogram histogram : this.histograms)
+			if(histogram.getCount() > 0)
+				out.println(histogram);
+	}
+
+	public void write(Path file) throws IOException {
+		try(PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+			print(out);
+		}
+	}
+
+	// Распределения всех непустых гистограмм в формате .hgrm, по файлу на гистограмму в каталоге directory
+	public void writePercentileDistributions(Path directory) throws IOException {
+		Files.createDirectories(directory);
+
+		for(Histogram histogram : this.histograms) {
+			if(histogram.getCount() == 0)
+				continue;
+
+			Path file = directory.resolve(histogram.name.replaceAll("[^A-Za-z0-9]+", "_") + ".hgrm");
+
+			try(PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+				histogram.printPercentileDistribution(out);
+			}
+		}
+	}
+}
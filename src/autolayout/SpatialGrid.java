@@ -0,0 +1,92 @@
+package autolayout;
+
+import java.util.*;
+
+// Равномерная сетка для быстрого поиска точек в прямоугольной области.
+// Строится один раз по массивам координат, точки раскладываются по ячейкам.
+// Индексы точек каждой ячейки лежат подряд в cellItems (как в CSR-матрице),
+// поэтому запрос не создаёт объектов и может выполняться из нескольких потоков.
+public class SpatialGrid {
+	public final float 	cellSize;
+	public final float 	originX, originY;
+	public final int 	numCellsX, numCellsY;
+
+	public final int[] 	cellStart; // начало списка точек ячейки в cellItems, длина numCellsX*numCellsY + 1
+	public final int[] 	cellItems; // индексы точек в исходных массивах, сгруппированные по ячейкам
+
+	public SpatialGrid(float[] xs, float[] ys, int count, float cellSize) {
+		this.cellSize = cellSize;
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+		for(int i = 0; i < count; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+
+		if(count == 0) {
+			minX = minY = maxX = maxY = 0.0f;
+		}
+
+		this.originX = minX;
+		this.originY = minY;
+
+		this.numCellsX = (int)((maxX - minX)/cellSize) + 1;
+		this.numCellsY = (int)((maxY - minY)/cellSize) + 1;
+
+		this.cellStart = new int[this.numCellsX*this.numCellsY + 1];
+		this.cellItems = new int[count];
+
+		// сортировка подсчётом: сначала размеры ячеек, затем раскладка индексов
+		int[] itemCell = new int[count];
+
+		for(int i = 0; i < count; i++) {
+			itemCell[i] = getCellIndex(getCellX(xs[i]), getCellY(ys[i]));
+
+			this.cellStart[itemCell[i] + 1]++;
+		}
+
+		for(int c = 0; c < this.numCellsX*this.numCellsY; c++)
+			this.cellStart[c + 1] += this.cellStart[c];
+
+		int[] fill = Arrays.copyOf(this.cellStart, this.cellStart.length - 1);
+
+		for(int i = 0; i < count; i++)
+			this.cellItems[fill[itemCell[i]]++] = i;
+	}
+
+	// сетка, построенная ранее (например, загруженная из кеша силуэтов)
+	public SpatialGrid(float cellSize, float originX, float originY, int numCellsX, int numCellsY,
+			int[] cellStart, int[] cellItems) {
+		if(cellStart.length != numCellsX*numCellsY + 1)
+			throw new IllegalArgumentException("Cell table size doesn't match " + numCellsX + "x" + numCellsY);
+
+		this.cellSize = cellSize;
+		this.originX = originX;
+		this.originY = originY;
+		this.numCellsX = numCellsX;
+		this.numCellsY = numCellsY;
+		this.cellStart = cellStart;
+		this.cellItems = cellItems;
+	}
+
+	// номер ячейки по оси, с ограничением по границам сетки
+	public int getCellX(float x) {
+		int cx = (int)Math.floor((x - this.originX)/this.cellSize);
+
+		return Math.max(0, Math.min(this.numCellsX - 1, cx));
+	}
+
+	public int getCellY(float y) {
+		int cy = (int)Math.floor((y - this.originY)/this.cellSize);
+
+		return Math.max(0, Math.min(this.numCellsY - 1, cy));
+	}
+
+	public int getCellIndex(int cx, int cy) {
+		return cy*this.numCellsX + cx;
+	}
+}
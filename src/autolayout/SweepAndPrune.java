@@ -0,0 +1,126 @@
+package autolayout;
+
+import java.util.*;
+
+// Широкая фаза поиска пересечений прямоугольников бабблов (sweep-and-prune по оси x).
+// Бабблы хранятся отсортированными по левой границе. Между итерациями бабблы смещаются мало,
+// поэтому порядок досортировывается вставками почти за линейное время.
+// Проход по отсортированному списку выдаёт только пары, перекрывающиеся по обеим осям.
+public class SweepAndPrune {
+	private int 	count = -1;
+	private int[] 	order = new int[0]; // индексы бабблов по возрастанию minX
+	private float[] minX = new float[0], minY = new float[0], maxX = new float[0], maxY = new float[0];
+
+	private long[] 	sortKeys = new long[0]; // для полной сортировки при смене числа бабблов
+
+	public int 		numPairs;
+	public int 		numCandidates; // пары, перекрывающиеся по x, которые проверялись по y
+	public int[] 	pairA = new int[0], pairB = new int[0]; // найденные пары-кандидаты
+
+	// обновляет прямоугольники (с полями margin) и порядок, затем находит все перекрывающиеся пары
+	public void update(BubbleBuffer packed, float margin) {
+		int n = packed.count;
+
+		if(this.minX.length < n) {
+			this.minX = new float[n];
+			this.minY = new float[n];
+			this.maxX = new float[n];
+			this.maxY = new float[n];
+		}
+
+		for(int i = 0; i < n; i++) {
+			float halfDimX = packed.dimX[i]*0.5f;
+			float halfDimY = packed.dimY[i]*0.5f;
+
+			this.minX[i] = packed.posX[i] - halfDimX - margin;
+			this.minY[i] = packed.posY[i] - halfDimY - margin;
+			this.maxX[i] = packed.posX[i] + halfDimX + margin;
+			this.maxY[i] = packed.posY[i] + halfDimY + margin;
+		}
+
+		if(n != this.count)
+			sortFully(n);
+		else
+			sortIncrementally(n);
+
+		findPairs(n);
+	}
+
+	private void sortFully(int n) {
+		this.count = n;
+
+		if(this.order.length < n) {
+			this.order = new int[n];
+			this.sortKeys = new long[n];
+		}
+
+		// ключ: монотонное целочисленное представление float в старших битах, индекс в младших
+		for(int i = 0; i < n; i++) {
+			int bits = Float.floatToIntBits(this.minX[i]);
+
+			bits ^= (bits >> 31) & 0x7FFFFFFF;
+
+			this.sortKeys[i] = ((long)bits << 32) | i;
+		}
+
+		Arrays.sort(this.sortKeys, 0, n);
+
+		for(int i = 0; i < n; i++)
+			this.order[i] = (int)this.sortKeys[i];
+	}
+
+	private void sortIncrementally(int n) {
+		for(int k = 1; k < n; k++) {
+			int item = this.order[k];
+			float key = this.minX[item];
+
+			int j = k - 1;
+
+			while(j >= 0 && this.minX[this.order[j]] > key) {
+				this.order[j + 1] = this.order[j];
+				j--;
+			}
+
+			this.order[j + 1] = item;
+		}
+	}
+
+	private void findPairs(int n) {
+		this.numPairs = 0;
+
+		int numCandidates = 0;
+
+		for(int k = 0; k < n; k++) {
+			int a = this.order[k];
+
+			for(int m = k + 1; m < n; m++) {
+				int b = this.order[m];
+
+				if(this.minX[b] > this.maxX[a]) // дальше по списку все бабблы правее
+					break;
+
+				numCandidates++;
+
+				if(this.minY[a] > this.maxY[b] || this.minY[b] > this.maxY[a])
+					continue;
+
+				addPair(a, b);
+			}
+		}
+
+		this.numCandidates = numCandidates;
+	}
+
+	private void addPair(int a, int b) {
+		if(this.numPairs == this.pairA.length) {
+			int capacity = Math.max(16, this.numPairs*2);
+
+			this.pairA = Arrays.copyOf(this.pairA, capacity);
+			this.pairB = Arrays.copyOf(this.pairB, capacity);
+		}
+
+		this.pairA[this.numPairs] = a;
+		this.pairB[this.numPairs] = b;
+		this.numPairs++;
+	}
+}
@@ -0,0 +1,95 @@
+package autolayout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PVector;
+
+// Сравнение преобразования расстояний EscapeField с перебором всех свободных точек
+class EscapeFieldTest {
+	static final float POINT_SIZE = 60.0f;
+
+	// случайные растры разной плотности, от почти пустых до сплошных
+	@Test
+	void matchesBruteForceOnRandomRasters() {
+		Random random = new Random(1);
+
+		for(int run = 0; run < 200; run++) {
+			int width = 1 + random.nextInt(40), height = 1 + random.nextInt(40);
+			float density = random.nextFloat();
+
+			float[] weights = new float[width*height];
+
+			for(int i = 0; i < weights.length; i++)
+				weights[i] = random.nextFloat() < density ? 0.05f + random.nextFloat()*0.95f : 0.0f;
+
+			assertMatchesBruteForce(new Silhouette(weights, width, height, -width*POINT_SIZE/2, -height*POINT_SIZE/2, POINT_SIZE, 120.0f));
+		}
+	}
+
+	// сплошной силуэт: выход только за край растра
+	@Test
+	void leadsToBorderOnSolidRaster() {
+		int width = 9, height = 5;
+
+		float[] weights = new float[width*height];
+
+		Arrays.fill(weights, 1.0f);
+
+		Silhouette silhouette = new Silhouette(weights, width, height, 0.0f, 0.0f, POINT_SIZE, 120.0f);
+
+		assertMatchesBruteForce(silhouette);
+
+		// центр средней точки: до верхнего и нижнего края по 3 точки, до боковых - по 5
+		assertEquals(3*POINT_SIZE, silhouette.getEscapeField().getDistance(4.5f*POINT_SIZE, 2.5f*POINT_SIZE), 1e-3f);
+	}
+
+	private static void assertMatchesBruteForce(Silhouette silhouette) {
+		EscapeField field = new EscapeField(silhouette);
+
+		assertEquals(silhouette.width + 2, field.width);
+		assertEquals(silhouette.height + 2, field.height);
+
+		for(int j = 0; j < field.height; j++)
+			for(int i = 0; i < field.width; i++) {
+				int cell = j*field.width + i;
+
+				int dx = Math.round(field.escapeX[cell]/field.cellSize);
+				int dy = Math.round(field.escapeY[cell]/field.cellSize);
+
+				assertTrue(isFree(silhouette, i + dx, j + dy), "escape from (" + i + ", " + j + ") leads to an occupied point");
+				assertEquals(getNearestFreeDistanceSq(silhouette, i, j), dx*dx + dy*dy, "distance from (" + i + ", " + j + ")");
+
+				// запрос по координатам центра точки возвращает тот же вектор
+				float x = field.left + (i + 0.5f)*field.cellSize, y = field.top + (j + 0.5f)*field.cellSize;
+
+				assertEquals(field.escapeX[cell], field.getEscape(x, y, new PVector()).x);
+				assertEquals(field.escapeY[cell], field.getEscape(x, y, new PVector()).y);
+			}
+	}
+
+	private static int getNearestFreeDistanceSq(Silhouette silhouette, int i, int j) {
+		int best = Integer.MAX_VALUE;
+
+		for(int q = 0; q < silhouette.height + 2; q++)
+			for(int p = 0; p < silhouette.width + 2; p++)
+				if(isFree(silhouette, p, q))
+					best = Math.min(best, (p - i)*(p - i) + (q - j)*(q - j));
+
+		return best;
+	}
+
+	// точка растра с рамкой в одну точку, как в EscapeField
+	private static boolean isFree(Silhouette silhouette, int i, int j) {
+		if(i < 0 || j < 0 || i > silhouette.width + 1 || j > silhouette.height + 1)
+			return false;
+
+		if(i == 0 || j == 0 || i > silhouette.width || j > silhouette.height)
+			return true;
+
+		return silhouette.weights[(j - 1)*silhouette.width + (i - 1)] <= 0.0f;
+	}
+}
@@ -0,0 +1,153 @@
+package autolayout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+// Сравнение заметающей прямой LeaderCrossings с перебором пар линий через LayoutManager.areSegmentsCrossing
+class LeaderCrossingsTest {
+	// случайные положения бабблов и пинов в квадрате 1000x1000
+	@Test
+	void matchesPairwiseOnRandomLeaders() {
+		Random random = new Random(1);
+
+		for(int run = 0; run < 200; run++) {
+			int numBubbles = 1 + random.nextInt(run < 190 ? 60 : 500);
+
+			assertMatchesPairwise(createLeaders(random, numBubbles, 1 + random.nextInt(3), () -> random.nextFloat()*1000));
+		}
+	}
+
+	// Вырожденные случаи: концы на целочисленной сетке 6x6 дают касания, наложения на одной прямой,
+	// вертикальные линии, общие пины и несколько пересечений в одной точке
+	@Test
+	void matchesPairwiseOnDegenerateLeaders() {
+		Random random = new Random(2);
+
+		for(int run = 0; run < 300; run++)
+			assertMatchesPairwise(createLeaders(random, 1 + random.nextInt(40), 1 + random.nextInt(3), () -> random.nextInt(6)*100.0f));
+	}
+
+	// все линии вертикальные или горизонтальные
+	@Test
+	void matchesPairwiseOnAxisAlignedLeaders() {
+		Random random = new Random(3);
+
+		for(int run = 0; run < 100; run++) {
+			int numBubbles = 1 + random.nextInt(50);
+
+			BubbleBuffer packed = createLeaders(random, numBubbles, 1, () -> random.nextInt(20)*50.0f);
+
+			for(int bubble = 0; bubble < numBubbles; bubble++) {
+				int pin = packed.pinIndex[packed.pinStart[bubble]];
+
+				if(random.nextBoolean())
+					packed.pinX[pin] = packed.posX[bubble];
+				else
+					packed.pinY[pin] = packed.posY[bubble];
+			}
+
+			assertMatchesPairwise(packed);
+		}
+	}
+
+	@Test
+	void findsKnownCrossing() {
+		Random random = new Random(4);
+
+		BubbleBuffer packed = createLeaders(random, 2, 1, () -> 0.0f);
+
+		// диагонали квадрата пересекаются в центре
+		packed.posX[0] = 0;		packed.posY[0] = 0;		packed.pinX[0] = 100;	packed.pinY[0] = 100;
+		packed.posX[1] = 0;		packed.posY[1] = 100;	packed.pinX[1] = 100;	packed.pinY[1] = 0;
+		packed.pinIndex[0] = 0;
+		packed.pinIndex[1] = 1;
+
+		LeaderCrossings crossings = new LeaderCrossings();
+
+		crossings.find(packed);
+
+		assertEquals(1, crossings.numCrossings);
+	}
+
+	private interface Coordinate {
+		float next();
+	}
+
+	// бабблы с 1..maxPinsPerBubble пинами, изредка общими для нескольких бабблов
+	private static BubbleBuffer createLeaders(Random random, int numBubbles, int maxPinsPerBubble, Coordinate coordinate) {
+		int[] numBubblePins = new int[numBubbles];
+		int numLinks = 0;
+
+		for(int bubble = 0; bubble < numBubbles; bubble++) {
+			numBubblePins[bubble] = 1 + random.nextInt(maxPinsPerBubble);
+			numLinks += numBubblePins[bubble];
+		}
+
+		BubbleBuffer packed = new BubbleBuffer();
+
+		packed.resize(numBubbles, numLinks, numLinks);
+
+		for(int pin = 0; pin < numLinks; pin++) {
+			packed.pinX[pin] = coordinate.next();
+			packed.pinY[pin] = coordinate.next();
+		}
+
+		int link = 0;
+
+		for(int bubble = 0; bubble < numBubbles; bubble++) {
+			packed.posX[bubble] = coordinate.next();
+			packed.posY[bubble] = coordinate.next();
+			packed.pinStart[bubble] = link;
+
+			for(int i = 0; i < numBubblePins[bubble]; i++)
+				packed.pinIndex[link++] = random.nextInt(8) == 0 ? random.nextInt(numLinks) : link - 1;
+		}
+
+		packed.pinStart[numBubbles] = link;
+
+		return packed;
+	}
+
+	private static void assertMatchesPairwise(BubbleBuffer packed) {
+		Set<Long> expected = new HashSet<Long>();
+
+		int numSegments = packed.pinStart[packed.count];
+
+		int[] segmentBubble = new int[numSegments];
+
+		for(int bubble = 0; bubble < packed.count; bubble++)
+			for(int link = packed.pinStart[bubble]; link < packed.pinStart[bubble + 1]; link++)
+				segmentBubble[link] = bubble;
+
+		for(int a = 0; a < numSegments; a++)
+			for(int b = a + 1; b < numSegments; b++) {
+				if(segmentBubble[a] == segmentBubble[b])
+					continue;
+
+				int pinA = packed.pinIndex[a], pinB = packed.pinIndex[b];
+
+				if(LayoutManager.areSegmentsCrossing(packed.posX[segmentBubble[a]], packed.posY[segmentBubble[a]], packed.pinX[pinA], packed.pinY[pinA],
+						packed.posX[segmentBubble[b]], packed.posY[segmentBubble[b]], packed.pinX[pinB], packed.pinY[pinB]))
+					expected.add(getPairKey(a, b));
+			}
+
+		LeaderCrossings crossings = new LeaderCrossings();
+
+		crossings.find(packed);
+
+		Set<Long> found = new HashSet<Long>();
+
+		for(int i = 0; i < crossings.numCrossings; i++)
+			found.add(getPairKey(Math.min(crossings.crossingA[i], crossings.crossingB[i]), Math.max(crossings.crossingA[i], crossings.crossingB[i])));
+
+		assertEquals(expected.size(), crossings.numCrossings, "number of crossings");
+		assertEquals(expected, found, "crossing pairs");
+	}
+
+	private static long getPairKey(int a, int b) {
+		return ((long)a << 32) | b;
+	}
+}